@@ -0,0 +1,58 @@
+/*
+ * Elliot Maringer
+ */
+
+package fa.bench;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// EpsilonNFA.union, concatenate and closure, each applied to the automaton and itself,
+// and the n-ary union and concatenate over 100 copies of it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinatorBenchmark {
+
+    @Param({"a01:sipser-nfa-01.txt", "a01:sipser-dfa-01.txt", "kth-from-end:256", "epsilon-chain:5000"})
+    public String automaton;
+
+    private Object parsed;
+    private List<Object> copies;
+
+    @Setup
+    public void setup() throws Throwable {
+        parsed = Engines.parseFile(Synthetic.resolve(automaton));
+        copies = Collections.nCopies(100, parsed);
+    }
+
+    @Benchmark
+    public Object union() throws Throwable {
+        return Engines.UNION.invokeExact(parsed, parsed);
+    }
+
+    @Benchmark
+    public Object concatenate() throws Throwable {
+        return Engines.CONCATENATE.invokeExact(parsed, parsed);
+    }
+
+    @Benchmark
+    public Object closure() throws Throwable {
+        return Engines.CLOSURE.invokeExact(parsed);
+    }
+
+    @Benchmark
+    public Object unionOfMany() throws Throwable {
+        return Engines.UNION_ALL.invokeExact((Object) copies);
+    }
+
+    @Benchmark
+    public Object concatenateOfMany() throws Throwable {
+        return Engines.CONCATENATE_ALL.invokeExact((Object) copies);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Elliot Maringer
+ */
+
+package fa.bench;
+
+import java.lang.invoke.*;
+import java.util.*;
+
+// The automaton classes live in the unnamed package, which a named package cannot
+// import, so the benchmarks reach them through method handles. A handle held in a
+// static final field is a constant to the JIT and is inlined like a direct call.
+final class Engines {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final MethodHandle PARSE_FILE = findStatic("FileParser", "parseFile", 1);
+
+    static final MethodHandle GET_STATES = findGetter("getStates");
+    static final MethodHandle GET_ALPHABET = findGetter("getAlphabet");
+    static final MethodHandle GET_INITIAL_STATE = findGetter("getInitialState");
+    static final MethodHandle GET_ACCEPT_STATES = findGetter("getAcceptStates");
+    static final MethodHandle GET_TRANSITIONS = findGetter("getTransitions");
+    static final MethodHandle GET_EPSILON_TRANSITIONS = findGetter("getEpsilonTransitions");
+    static final MethodHandle GET_TYPE = findGetter("getType");
+
+    static final MethodHandle NEW_DFA = findConstructor("DFA", Set.class, Set.class, String.class, Set.class, Map.class);
+    static final MethodHandle NEW_NFA = findConstructor("NFA", Set.class, Set.class, String.class, Set.class, Map.class);
+    static final MethodHandle NEW_EPSILON_NFA = findConstructor("EpsilonNFA", Set.class, Set.class, String.class, Set.class, Map.class, Map.class);
+
+    static final MethodHandle RUN_DFA = findRun("DFA", "runDFA");
+    static final MethodHandle RUN_NFA = findRun("NFA", "runNFA");
+    static final MethodHandle RUN_ENFA = findRun("EpsilonNFA", "runENFA");
+
+    static final MethodHandle INTERSECT = findStatic("DFA", "intersect", 2);
+    static final MethodHandle UNION = findStatic("EpsilonNFA", "union", 2);
+    static final MethodHandle CONCATENATE = findStatic("EpsilonNFA", "concatenate", 2);
+    static final MethodHandle CLOSURE = findStatic("EpsilonNFA", "closure", 1);
+    static final MethodHandle UNION_ALL = findStatic("EpsilonNFA", "union", 1);
+    static final MethodHandle CONCATENATE_ALL = findStatic("EpsilonNFA", "concatenate", 1);
+
+    private Engines() {
+    }
+
+    static Object parseFile(String path) throws Throwable {
+        return PARSE_FILE.invokeExact((Object) path);
+    }
+
+    // Wraps a parsed automaton in the DFA, NFA or EpsilonNFA class matching its type, the way App does
+    static Object build(Object automaton) throws Throwable {
+        Object states = GET_STATES.invokeExact(automaton);
+        Object alphabet = GET_ALPHABET.invokeExact(automaton);
+        Object initial = GET_INITIAL_STATE.invokeExact(automaton);
+        Object accept = GET_ACCEPT_STATES.invokeExact(automaton);
+        Object transitions = GET_TRANSITIONS.invokeExact(automaton);
+        switch (type(automaton)) {
+            case "DFA":
+                return NEW_DFA.invokeExact(states, alphabet, initial, accept, transitions);
+            case "NFA":
+                return NEW_NFA.invokeExact(states, alphabet, initial, accept, transitions);
+            default:
+                Object epsilon = GET_EPSILON_TRANSITIONS.invokeExact(automaton);
+                return NEW_EPSILON_NFA.invokeExact(states, alphabet, initial, accept, transitions, epsilon);
+        }
+    }
+
+    // Handle running input on the automaton returned by build, typed (Object, String)boolean
+    static MethodHandle runner(Object engine) {
+        switch (engine.getClass().getName()) {
+            case "DFA":
+                return RUN_DFA;
+            case "NFA":
+                return RUN_NFA;
+            default:
+                return RUN_ENFA;
+        }
+    }
+
+    static String type(Object automaton) throws Throwable {
+        return (String) (Object) GET_TYPE.invokeExact(automaton);
+    }
+
+    // Input symbols of a parsed automaton, without epsilon
+    @SuppressWarnings("unchecked")
+    static List<String> symbols(Object automaton) throws Throwable {
+        List<String> symbols = new ArrayList<>((Set<String>) (Object) GET_ALPHABET.invokeExact(automaton));
+        symbols.remove("epsilon");
+        Collections.sort(symbols);
+        return symbols;
+    }
+
+    private static Class<?> core(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Automaton class " + name + " is not on the class path", e);
+        }
+    }
+
+    // Static method with every parameter and the result seen as Object
+    private static MethodHandle findStatic(String owner, String name, int arity) {
+        for (java.lang.reflect.Method method : core(owner).getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == arity) {
+                try {
+                    return LOOKUP.unreflect(method).asType(MethodType.genericMethodType(arity));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        throw new IllegalStateException("No method " + owner + "." + name);
+    }
+
+    private static MethodHandle findGetter(String name) {
+        Class<?> automaton = core("Automaton");
+        try {
+            java.lang.reflect.Method method = automaton.getMethod(name);
+            return LOOKUP.unreflect(method).asType(MethodType.genericMethodType(1));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findConstructor(String owner, Class<?>... parameters) {
+        try {
+            MethodHandle constructor = LOOKUP.findConstructor(core(owner), MethodType.methodType(void.class, parameters));
+            return constructor.asType(MethodType.genericMethodType(parameters.length));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findRun(String owner, String name) {
+        try {
+            MethodHandle run = LOOKUP.findVirtual(core(owner), name, MethodType.methodType(boolean.class, String.class));
+            return run.asType(MethodType.methodType(boolean.class, Object.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Elliot Maringer
+ */
+
+package fa.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// FileParser.parseFile on small hand written tables and large generated ones
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"a01:sipser-nfa-01.txt", "a01:valid-with-poor-formatting.txt", "dfa:1000", "dfa:100000", "nfa:100000", "enfa:10000"})
+    public String automaton;
+
+    private String path;
+
+    @Setup
+    public void setup() throws Throwable {
+        path = Synthetic.resolve(automaton);
+    }
+
+    @Benchmark
+    public Object parseFile() throws Throwable {
+        return Engines.parseFile(path);
+    }
+}
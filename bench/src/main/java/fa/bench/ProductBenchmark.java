@@ -0,0 +1,36 @@
+/*
+ * Elliot Maringer
+ */
+
+package fa.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// DFA.intersect on pairs of DFAs, given as "spec1,spec2"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductBenchmark {
+
+    @Param({"a01:even-ones.txt,a01:even-zeros.txt", "a01:sipser-dfa-01.txt,a01:ends-with-one.txt", "dfa:300,dfa:301", "dfa:1000,dfa:1001"})
+    public String pair;
+
+    private Object dfa1;
+    private Object dfa2;
+
+    @Setup
+    public void setup() throws Throwable {
+        String[] specs = pair.split(",");
+        dfa1 = Engines.build(Engines.parseFile(Synthetic.resolve(specs[0])));
+        dfa2 = Engines.build(Engines.parseFile(Synthetic.resolve(specs[1])));
+    }
+
+    @Benchmark
+    public Object intersect() throws Throwable {
+        return Engines.INTERSECT.invokeExact(dfa1, dfa2);
+    }
+}
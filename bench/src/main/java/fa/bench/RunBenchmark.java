@@ -0,0 +1,42 @@
+/*
+ * Elliot Maringer
+ */
+
+package fa.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// runDFA, runNFA and runENFA, chosen by the type of the parsed automaton
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunBenchmark {
+
+    @Param({"a01:sipser-dfa-01.txt", "a01:sipser-nfa-02.txt", "a01:sipser-nfa-01.txt", "dfa:10000", "nfa:300", "kth-from-end:65", "enfa:2000", "epsilon-chain:2000"})
+    public String automaton;
+
+    @Param({"1000", "100000"})
+    public int inputLength;
+
+    private Object engine;
+    private MethodHandle run;
+    private String input;
+
+    @Setup
+    public void setup() throws Throwable {
+        Object parsed = Engines.parseFile(Synthetic.resolve(automaton));
+        engine = Engines.build(parsed);
+        run = Engines.runner(engine);
+        input = Synthetic.randomInput(Engines.symbols(parsed), inputLength, 42);
+    }
+
+    @Benchmark
+    public boolean run() throws Throwable {
+        return (boolean) run.invokeExact(engine, input);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Elliot Maringer
+ */
+
+package fa.bench;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Turns a benchmark parameter into the path of an automaton table. "a01:<file>"
+// names a file in the a01-data folder (set fa.data to point elsewhere) and
+// "<family>:<states>" writes an automaton from that AutomatonGenerator family,
+// over {0, 1} with a fixed seed, to a temporary file.
+final class Synthetic {
+
+    private static final MethodHandle NEW_GENERATOR;
+    private static final MethodHandle GENERATE;
+    private static final MethodHandle WRITE_TABLE;
+
+    static {
+        try {
+            Class<?> generator = Class.forName("AutomatonGenerator");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            NEW_GENERATOR = lookup.findConstructor(generator, MethodType.methodType(void.class,
+                    String.class, int.class, int.class, double.class, double.class, double.class, long.class))
+                    .asType(MethodType.methodType(Object.class, String.class, int.class, int.class, double.class, double.class, double.class, long.class));
+            GENERATE = lookup.findVirtual(generator, "generate", MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+            WRITE_TABLE = lookup.findVirtual(generator, "writeTable", MethodType.methodType(void.class, Writer.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Writer.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Synthetic() {
+    }
+
+    static String resolve(String spec) throws Throwable {
+        int colon = spec.indexOf(':');
+        String family = spec.substring(0, colon);
+        String arg = spec.substring(colon + 1);
+        if (family.equals("a01")) {
+            return Paths.get(System.getProperty("fa.data", "a01-data"), arg).toString();
+        }
+        int states = Integer.parseInt(arg);
+        Object generator = NEW_GENERATOR.invokeExact(family, states, 2, 1.5, 0.2, 0.25, (long) states);
+        GENERATE.invokeExact(generator);
+        Path file = Files.createTempFile("fa-" + family + "-" + states + "-", ".txt");
+        file.toFile().deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            WRITE_TABLE.invokeExact(generator, (Writer) writer);
+        }
+        return file.toString();
+    }
+
+    // Random string over the symbols, seeded so every run sees the same input
+    static String randomInput(List<String> symbols, int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder input = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            input.append(symbols.get(random.nextInt(symbols.size())));
+        }
+        return input.toString();
+    }
+}
@@ -0,0 +1,50 @@
+#!/bin/bash
+#
+# Elliot Maringer
+#
+# Runs --run and --language over every automaton in a01-data and compares the output
+# with the baselines next to this script. Prints the differences and exits with 1 if
+# anything changed. After a change that is meant to alter the output, run it with
+# --update to rewrite the baselines, and check their diff before committing it.
+#
+#   scripts/regress.sh [--update]
+
+cd "$(dirname "$0")/.." || exit 1
+
+classes=$(mktemp -d)
+actual=$(mktemp -d)
+trap 'rm -rf "$classes" "$actual"' EXIT
+
+javac -encoding UTF-8 -d "$classes" src/*.java || exit 1
+
+inputs=("" 0 1 01 0010 111 ab aab baa 0110101 ababab)
+for f in a01-data/*.txt; do
+    echo "== $f"
+    for input in "${inputs[@]}"; do
+        java -cp "$classes" App --run "$f" "$input"
+    done
+done > "$actual/run.txt" 2>&1
+
+# Strings of the same length may be found in any order, so they are sorted
+for f in a01-data/*.txt; do
+    echo "== $f"
+    java -cp "$classes" App --language "$f" 5 | LC_ALL=C sort
+done > "$actual/language.txt" 2>&1
+
+if [ "$1" = "--update" ]; then
+    cp "$actual/run.txt" scripts/regress-run.txt
+    cp "$actual/language.txt" scripts/regress-language.txt
+    echo "Updated the baselines"
+    exit 0
+fi
+
+status=0
+for name in run language; do
+    if ! diff -u "scripts/regress-$name.txt" "$actual/$name.txt"; then
+        status=1
+    fi
+done
+if [ $status -eq 0 ]; then
+    echo "No differences from the baselines"
+fi
+exit $status
@@ -3,6 +3,8 @@
  */
 
 import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class App {
@@ -11,36 +13,42 @@ public class App {
             System.out.println("Usage: java App <action> <arguments>");
             return;
         }
+        // --disk-cache applies to every action, so it is taken out before the action reads its arguments
+        if (hasFlag(args, "--disk-cache")) {
+            AutomatonCache.shared().setDiskTier(true);
+            List<String> rest = new ArrayList<>(Arrays.asList(args));
+            rest.remove("--disk-cache");
+            args = rest.toArray(new String[0]);
+        }
+        // --stats prints the time and size of each phase to stderr once the action is done,
+        // which for --serve is when the server is stopped
+        if (hasFlag(args, "--stats")) {
+            Metrics.setEnabled(true);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> Metrics.print(System.err)));
+            List<String> rest = new ArrayList<>(Arrays.asList(args));
+            rest.remove("--stats");
+            args = rest.toArray(new String[0]);
+        }
         //Get action command from user as first argument and handle accordingly
         String action = args[0];
         switch(action) {
             case "--info": {
                 String filePath = args[1]; //Assuming one FA input
                 try {
-                    Automaton automaton = FileParser.parseFile(filePath);
-                    String type = automaton.getType();
-                    //cases for handling each type of automata
-                    switch (type) {
-                        case "DFA": {
-                            DFA dfa = new DFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(), automaton.getAcceptStates(), automaton.getTransitions());
-                            dfa.printInfo();
-                            break;
-                        }
-                        case "NFA": {
-                            NFA nfa = new NFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(), automaton.getAcceptStates(), automaton.getTransitions());
-                            nfa.printInfo();
-                            break;
-                        }
-                        case "EpsilonNFA": {
-                            EpsilonNFA enfa = new EpsilonNFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(), automaton.getAcceptStates(), automaton.getTransitions(), automaton.getEpsilonTransitions());
-                            enfa.printInfo();
-                            break;
-                        }
-                        default:
-                            System.out.println("Unsupported automaton type.");
-                    }
+                    printInfo(loadAutomaton(filePath));
                 } catch (IOException e) {
-                    System.out.println("An issue occurred while reading the file");
+                    reportError(e, "An issue occurred while reading the file");
+                }
+                break;
+            }
+            case "--regex": {
+                // Prints the position automaton of a pattern, which any other action can
+                // also read in place of a file as regex:<PATTERN>
+                String pattern = args[1];
+                try {
+                    printInfo(RegexParser.parse(pattern));
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the pattern");
                 }
                 break;
             }
@@ -49,26 +57,49 @@ public class App {
                 String filePath = args[1];
                 // Obtain an input to run FA on
                 String input = args[2];
+                // With --profile FILE the states and transitions the run used are written to FILE
+                String profilePath = optionValue(args, "--profile");
+                TransitionProfile profile = null;
                 try {
-                    Automaton automaton = FileParser.parseFile(filePath);
+                    // Without a profile the run needs no engine of its own type, so it goes
+                    // through the cache and --disk-cache can skip parsing and compiling
+                    if (profilePath == null) {
+                        boolean result = runMatcher(filePath, input);
+                        System.out.println("Running on input [" + input + "]: " + (result ? "accept" : "reject"));
+                        break;
+                    }
+                    // A compiled DFA file is profiled straight from its table, reporting a
+                    // missing transition only if it was compiled from a DFA, as runMatcher does
+                    if (CompiledDFAFile.isCompiledFile(filePath)) {
+                        CompiledDFA compiled = CompiledDFAFile.load(filePath).profiled();
+                        profile = compiled.getProfile();
+                        boolean fromNFA = (CompiledDFAFile.readFlags(filePath) & CompiledDFAFile.FROM_NFA) != 0;
+                        boolean result = fromNFA ? compiled.accepts(input) : compiled.run(input);
+                        System.out.println("Running on input [" + input + "]: " + (result ? "accept" : "reject"));
+                        writeProfile(profile, profilePath);
+                        break;
+                    }
+                    // Profiled copies of the engines runDFA, runNFA and runENFA would use
+                    Automaton automaton = loadAutomaton(filePath);
                     String type = automaton.getType();
                     boolean result = false;
                     switch (type) {
                         case "DFA": {
-                            DFA dfa = new DFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(), automaton.getAcceptStates(), automaton.getTransitions());
-                            result = dfa.runDFA(input);
+                            CompiledDFA compiled = new DFA(automaton).getCompiled().profiled();
+                            profile = compiled.getProfile();
+                            result = compiled.run(input);
                             break;
                         }
                         case "NFA": {
-                            NFA nfa = new NFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(),
-                                    automaton.getAcceptStates(), automaton.getTransitions());
-                            result = nfa.runNFA(input);
+                            CompiledNFA compiled = new NFA(automaton).getCompiled().profiled();
+                            profile = compiled.getProfile();
+                            result = compiled.run(input);
                             break;
                         }
                         case "EpsilonNFA": {
-                            EpsilonNFA enfa = new EpsilonNFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(),
-                                    automaton.getAcceptStates(), automaton.getTransitions(), automaton.getEpsilonTransitions());
-                            result = enfa.runENFA(input);
+                            CompiledNFA compiled = new EpsilonNFA(automaton).getCompiled().profiled();
+                            profile = compiled.getProfile();
+                            result = compiled.run(input);
                             break;
                         }
                         default:
@@ -76,8 +107,129 @@ public class App {
                     }
                     // Use truthyness of result from running our automaton to print accept or reject
                     System.out.println("Running on input [" + input + "]: " + (result ? "accept" : "reject"));
+                    writeProfile(profile, profilePath);
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file");
+                }
+                break;
+            }
+            case "--run-file": {
+                String filePath = args[1];
+                // The input is read from this file, or from stdin if it is "-"
+                String inputPath = args[2];
+                try {
+                    DeterministicMatcher matcher = loadMatcher(filePath);
+                    StreamRunner runner;
+                    if (inputPath.equals("-")) {
+                        runner = StreamRunner.runStream(matcher, System.in);
+                    } else {
+                        runner = StreamRunner.runFile(matcher, inputPath);
+                    }
+                    System.out.println("Running on input file [" + inputPath + "]: " + (runner.isAccepted() ? "accept" : "reject")
+                            + " after " + runner.getBytesRead() + " bytes");
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file(s)");
+                }
+                break;
+            }
+            case "--search": {
+                String filePath = args[1];
+                // The text is read from this file, or from stdin if it is "-"
+                String inputPath = args[2];
+                try {
+                    Searcher searcher = new Searcher(loadCompiledDFA(filePath));
+                    PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                    Searcher.MatchHandler printer = (start, end, text, from, to) -> {
+                        byte[] bytes = new byte[to - from];
+                        text.get(from, bytes);
+                        out.println(start + "-" + end + ": " + new String(bytes, StandardCharsets.ISO_8859_1));
+                    };
+                    if (inputPath.equals("-")) {
+                        searcher.searchStream(System.in, printer);
+                    } else {
+                        searcher.searchFile(inputPath, printer);
+                    }
+                    out.println(searcher.getMatches() + " matches in " + searcher.getBytesSearched() + " bytes");
+                    out.flush();
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file(s)");
+                }
+                break;
+            }
+            case "--run-batch": {
+                String filePath = args[1];
+                boolean printRejected = hasFlag(args, "--rejected");
+                String profilePath = optionValue(args, "--profile");
+                // Candidates come from the listed files, or from stdin if there are none
+                List<String> inputPaths = new ArrayList<>();
+                for (int i = 2; i < args.length; i++) {
+                    if (args[i].equals("--profile")) {
+                        i++;
+                    } else if (!args[i].equals("--rejected")) {
+                        inputPaths.add(args[i]);
+                    }
+                }
+                try {
+                    CompiledDFA dfa = loadCompiledDFA(filePath);
+                    // The cached DFA is shared, so a profile is taken on a copy of it
+                    if (profilePath != null) {
+                        dfa = dfa.profiled();
+                    }
+                    BatchRunner batch = new BatchRunner(dfa, printRejected);
+                    Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+                    if (inputPaths.isEmpty()) {
+                        batch.run(new BufferedReader(new InputStreamReader(System.in), 1 << 16), out);
+                    }
+                    for (String inputPath : inputPaths) {
+                        try (BufferedReader reader = new BufferedReader(new FileReader(inputPath), 1 << 16)) {
+                            batch.run(reader, out);
+                        }
+                    }
+                    out.flush();
+                    writeProfile(dfa.getProfile(), profilePath);
                 } catch (IOException e) {
-                    System.out.println("An issue occurred while reading the file");
+                    reportError(e, "An issue occurred while reading the file(s)");
+                }
+                break;
+            }
+            case "--run-multi": {
+                // Automata come first, then the candidates are read one per line from the
+                // file after --inputs, or from stdin
+                List<String> filePaths = new ArrayList<>();
+                String inputPath = "-";
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--inputs") && i + 1 < args.length) {
+                        inputPath = args[++i];
+                    } else {
+                        filePaths.add(args[i]);
+                    }
+                }
+                if (filePaths.isEmpty()) {
+                    System.out.println("Usage: java App --run-multi <FILENAME1> [<FILENAME2> ...] [--inputs <INPUTFILE>]");
+                    return;
+                }
+                try {
+                    List<Automaton> automata = new ArrayList<>();
+                    for (String filePath : filePaths) {
+                        automata.add(loadAutomaton(filePath));
+                    }
+                    MultiMatcher matcher = new MultiMatcher(automata);
+                    Reader source = inputPath.equals("-") ? new InputStreamReader(System.in) : new FileReader(inputPath);
+                    PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                    try (BufferedReader reader = new BufferedReader(source, 1 << 16)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            BitSet accepted = matcher.match(line);
+                            StringBuilder result = new StringBuilder();
+                            for (int i = accepted.nextSetBit(0); i >= 0; i = accepted.nextSetBit(i + 1)) {
+                                result.append(result.length() == 0 ? "accepted by " : ", ").append(filePaths.get(i));
+                            }
+                            out.println("Running on input [" + line + "]: " + (result.length() == 0 ? "reject" : result));
+                        }
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file(s)");
                 }
                 break;
             }
@@ -87,37 +239,61 @@ public class App {
                 // Obtain what length to generate strings up to
                 int lengthLimit = Integer.parseInt(args[2]);
                 try {
-                    Automaton automaton = FileParser.parseFile(filePath);
-                    List<String> language;
-                    String type = automaton.getType();
-                    switch(type) {
-                        case "DFA": {
-                            DFA dfa = new DFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(), automaton.getAcceptStates(), automaton.getTransitions());
-                            language = dfa.generateLanguage(lengthLimit);
-                            break;
-                        }
-                        case "NFA": {
-                            NFA nfa = new NFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(), automaton.getAcceptStates(), automaton.getTransitions());
-                            language = nfa.generateLanguage(lengthLimit);
-                            break;
-                        }
-                        case "EpsilonNFA": {
-                            EpsilonNFA enfa = new EpsilonNFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(), automaton.getAcceptStates(), automaton.getTransitions(), automaton.getEpsilonTransitions());
-                            language = enfa.generateLanguage(lengthLimit);
-                            break;
-                        }
-                        default: {
-                            System.out.println("Unsupported automaton type for language command.");
-                            return;
-                        }
+                    // Walk a DFA for any automaton type, printing strings as they are found
+                    CompiledDFA dfa = loadCompiledDFA(filePath);
+                    PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                    out.println("L(M) = {");
+                    GenerateString.generateLanguage(dfa, lengthLimit, s -> out.println("  " + s + ","));
+                    out.println("... }");
+                    out.flush();
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file");
+                }
+                break;
+            }
+            case "--count": {
+                String filePath = args[1];
+                // --mod gives the counts modulo M, which stay small for any length
+                String mod = optionValue(args, "--mod");
+                long lengthLimit;
+                long modulus = 0;
+                try {
+                    lengthLimit = Long.parseLong(args[2]);
+                    if (mod != null) {
+                        modulus = Long.parseLong(mod);
                     }
-                    System.out.println("L(M) = {");
-                    for (String s : language) {
-                        System.out.println("  " + s + ",");
+                } catch (NumberFormatException e) {
+                    System.out.println("Usage: java App --count <FILENAME> <LENGTHLIMIT> [--mod <M>]");
+                    return;
+                }
+                if (lengthLimit < 0) {
+                    System.out.println("The length limit cannot be negative: " + lengthLimit);
+                    return;
+                }
+                if (mod != null && (modulus < 1 || modulus > LanguageCounter.MAX_MODULUS)) {
+                    System.out.println("The modulus must be between 1 and " + LanguageCounter.MAX_MODULUS + ": " + modulus);
+                    return;
+                }
+                try {
+                    // Minimize first since the matrix work grows with the number of states
+                    CompiledDFA dfa = DFAMinimizer.minimize(loadCompiledDFA(filePath));
+                    if (modulus > 0) {
+                        printCountsModulo(dfa, lengthLimit, modulus);
+                    } else if (lengthLimit <= LanguageCounter.PER_LENGTH_LIMIT) {
+                        BigInteger[] counts = LanguageCounter.countByLength(dfa, (int) lengthLimit);
+                        BigInteger total = BigInteger.ZERO;
+                        for (int len = 0; len < counts.length; len++) {
+                            total = total.add(counts[len]);
+                            System.out.println("Length " + len + ": " + counts[len]);
+                        }
+                        System.out.println("Total up to length " + lengthLimit + ": " + total);
+                    } else {
+                        BigInteger[] counts = LanguageCounter.countByPower(dfa, lengthLimit);
+                        System.out.println("Length " + lengthLimit + ": " + counts[0]);
+                        System.out.println("Total up to length " + lengthLimit + ": " + counts[1]);
                     }
-                    System.out.println("... }");
                 } catch (IOException e) {
-                    System.out.println("An issue occurred while reading the file");
+                    reportError(e, "An issue occurred while reading the file");
                 }
                 break;
             }
@@ -125,101 +301,395 @@ public class App {
                 // Parse single DFA
                 String filePath = args[1];
                 try {
-                    Automaton automaton = FileParser.parseFile(filePath);
+                    Automaton automaton = loadAutomaton(filePath);
                     if (!automaton.getType().equals("DFA")) {
                         System.out.println("This command only supports DFAs.");
                         return;
                     }
-                    DFA dfa = new DFA(automaton.getStates(), automaton.getAlphabet(), automaton.getInitialState(),
-                            automaton.getAcceptStates(), automaton.getTransitions());
+                    DFA dfa = new DFA(automaton);
                     DFA compDFA = dfa.getComplement();
                     compDFA.printInfo();
                 } catch (IOException e) {
-                    System.out.println("An issue occurred while reading the file");
+                    reportError(e, "An issue occurred while reading the file");
                 }
                 break;
             }
 
             case "--intersect": {
-                // Parse both DFA from arguments
+                // Parse both automata from arguments
                 String filePath1 = args[1];
                 String filePath2 = args[2];
                 try {
-                    Automaton auto1 = FileParser.parseFile(filePath1);
-                    Automaton auto2 = FileParser.parseFile(filePath2);
-                    if (!auto1.getType().equals("DFA") || !auto2.getType().equals("DFA")) {
-                        System.out.println("This command only supports DFAs.");
-                        return;
+                    Automaton auto1 = loadAutomaton(filePath1);
+                    Automaton auto2 = loadAutomaton(filePath2);
+                    // NFAs, and so regex: patterns, are determinized before the product
+                    DFA intersectDFA = ProductDFA.build(buildCompiledDFA(auto1), buildCompiledDFA(auto2), ProductOp.AND).toDFA();
+                    if (hasFlag(args, "--minimize")) {
+                        intersectDFA = intersectDFA.minimize();
                     }
-                    DFA dfa1 = new DFA(auto1.getStates(), auto1.getAlphabet(), auto1.getInitialState(), auto1.getAcceptStates(), auto1.getTransitions());
-                    DFA dfa2 = new DFA(auto2.getStates(), auto2.getAlphabet(), auto2.getInitialState(), auto2.getAcceptStates(), auto2.getTransitions());
-                    DFA intersectDFA = DFA.intersect(dfa1, dfa2);
                     intersectDFA.printInfo();
                 } catch(IOException e) {
-                    System.out.println("An issue occurred while reading the file(s)");
+                    reportError(e, "An issue occurred while reading the file(s)");
                 }
                 break;
             }
             case "--union": {
-                String filePath1 = args[1];
-                String filePath2 = args[2];
+                // Two or more automata, with an optional --minimize flag
+                List<String> filePaths = fileArguments(args);
+                if (filePaths.size() < 2) {
+                    System.out.println("Usage: java App --union <FILENAME1> <FILENAME2> [<FILENAME3> ...] [--minimize]");
+                    return;
+                }
                 try {
-                    Automaton auto1 = FileParser.parseFile(filePath1);
-                    Automaton auto2 = FileParser.parseFile(filePath2);
-                    
+                    List<Automaton> automata = new ArrayList<>();
+                    boolean allDFA = true;
+                    for (String filePath : filePaths) {
+                        Automaton automaton = loadAutomaton(filePath);
+                        automata.add(automaton);
+                        allDFA &= automaton.getType().equals("DFA");
+                    }
+                    boolean minimize = hasFlag(args, "--minimize");
+
                     // If both are DFAs we will use the cross-product construction
-                    if(auto1.getType().equals("DFA") && auto2.getType().equals("DFA")) {
-                        DFA dfa1 = new DFA(auto1.getStates(), auto1.getAlphabet(), auto1.getInitialState(), auto1.getAcceptStates(), auto1.getTransitions());
-                        DFA dfa2 = new DFA(auto2.getStates(), auto2.getAlphabet(), auto2.getInitialState(), auto2.getAcceptStates(), auto2.getTransitions());
-                        DFA unionDFA = DFA.union(dfa1, dfa2);
+                    if (allDFA && automata.size() == 2) {
+                        DFA unionDFA = DFA.union(new DFA(automata.get(0)), new DFA(automata.get(1)));
+                        if (minimize) {
+                            unionDFA = unionDFA.minimize();
+                        }
                         unionDFA.printInfo();
+                    } else if (allDFA && minimize) {
+                        // Minimizing after every product keeps each step to the minimal DFA of
+                        // the union so far, rather than the product of all the sizes
+                        CompiledDFA union = DFAMinimizer.minimize(buildCompiledDFA(automata.get(0)));
+                        for (int i = 1; i < automata.size(); i++) {
+                            union = DFAMinimizer.minimize(ProductDFA.build(union, buildCompiledDFA(automata.get(i)), ProductOp.OR));
+                        }
+                        union.toDFA().printInfo();
                     } else {
-                        // If at least one is nondeterministic we will use the epsilon-NFA union construction
-                        EpsilonNFA unionENFA = EpsilonNFA.union(auto1, auto2);
+                        // Otherwise we will use the epsilon-NFA union construction, which grows with
+                        // the sum of the sizes where a product of more than two DFAs grows with their product
+                        EpsilonNFA unionENFA = EpsilonNFA.union(automata);
                         unionENFA.printInfo();
                     }
                 } catch(IOException e) {
-                    System.out.println("An issue occurred while reading the file(s)");
+                    reportError(e, "An issue occurred while reading the file(s)");
                 }
                 break;
             }
-            case "--concatenate": {
-                //Parse file path for both FA
+            case "--difference":
+            case "--xor": {
+                String filePath1 = args[1];
+                String filePath2 = args[2];
+                try {
+                    Automaton auto1 = loadAutomaton(filePath1);
+                    Automaton auto2 = loadAutomaton(filePath2);
+                    // Works on any automata, NFAs are determinized before the product
+                    ProductOp op = action.equals("--xor") ? ProductOp.XOR : ProductOp.DIFFERENCE;
+                    CompiledDFA product = ProductDFA.build(buildCompiledDFA(auto1), buildCompiledDFA(auto2), op);
+                    if (hasFlag(args, "--minimize")) {
+                        product = DFAMinimizer.minimize(product);
+                    }
+                    product.toDFA().printInfo();
+                } catch(IOException e) {
+                    reportError(e, "An issue occurred while reading the file(s)");
+                }
+                break;
+            }
+            case "--equivalent":
+            case "--subset": {
                 String filePath1 = args[1];
                 String filePath2 = args[2];
                 try {
-                    Automaton auto1 = FileParser.parseFile(filePath1);
-                    Automaton auto2 = FileParser.parseFile(filePath2);
-                    // Build an epsilon-NFA for the concatenation of the two automata.
-                    EpsilonNFA concatENFA = EpsilonNFA.concatenate(auto1, auto2);
+                    CompiledDFA dfa1 = loadCompiledDFA(filePath1);
+                    CompiledDFA dfa2 = loadCompiledDFA(filePath2);
+                    if (action.equals("--equivalent")) {
+                        String witness = LanguageChecks.distinguishingString(dfa1, dfa2);
+                        if (witness == null) {
+                            System.out.println("The automata are equivalent");
+                        } else {
+                            System.out.println("The automata are not equivalent, [" + witness + "] is accepted by only one of them");
+                        }
+                    } else {
+                        String witness = LanguageChecks.subsetCounterexample(dfa1, dfa2);
+                        if (witness == null) {
+                            System.out.println("L(M1) is a subset of L(M2)");
+                        } else {
+                            System.out.println("L(M1) is not a subset of L(M2), [" + witness + "] is accepted by only M1");
+                        }
+                    }
+                } catch(IOException e) {
+                    reportError(e, "An issue occurred while reading the file(s)");
+                }
+                break;
+            }
+            case "--empty": {
+                String filePath = args[1];
+                try {
+                    String witness = LanguageChecks.shortestAccepted(loadCompiledDFA(filePath));
+                    if (witness == null) {
+                        System.out.println("L(M) is empty");
+                    } else {
+                        System.out.println("L(M) is not empty, the shortest accepted string is [" + witness + "]");
+                    }
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file");
+                }
+                break;
+            }
+            case "--concatenate": {
+                //Parse file paths for two or more FA
+                List<String> filePaths = fileArguments(args);
+                if (filePaths.size() < 2) {
+                    System.out.println("Usage: java App --concatenate <FILENAME1> <FILENAME2> [<FILENAME3> ...]");
+                    return;
+                }
+                try {
+                    List<Automaton> automata = new ArrayList<>();
+                    for (String filePath : filePaths) {
+                        automata.add(loadAutomaton(filePath));
+                    }
+                    // Build an epsilon-NFA for the concatenation of the automata, in order.
+                    EpsilonNFA concatENFA = EpsilonNFA.concatenate(automata);
                     concatENFA.printInfo();
                 } catch(IOException e) {
-                    System.out.println("An issue occurred while reading the file(s)");
+                    reportError(e, "An issue occurred while reading the file(s)");
                 }
                 break;
             }
             case "--closure": {
                 String filePath = args[1];
                 try {
-                    Automaton auto = FileParser.parseFile(filePath);
+                    Automaton auto = loadAutomaton(filePath);
                     // Build an epsilon-NFA representing the closure of the automaton.
                     EpsilonNFA closureENFA = EpsilonNFA.closure(auto);
                     closureENFA.printInfo();
                 } catch(IOException e) {
-                    System.out.println("An issue occurred while reading the file");
+                    reportError(e, "An issue occurred while reading the file");
                 }
                 break;
             }
             
-            case "--to-dfa-full":
-                System.out.println("Did not implement :(");
+            case "--minimize": {
+                String filePath = args[1];
+                try {
+                    Automaton automaton = loadAutomaton(filePath);
+                    // NFAs are determinized first so every automaton type can be minimized
+                    DFA dfa;
+                    if (automaton.getType().equals("DFA")) {
+                        dfa = new DFA(automaton);
+                    } else {
+                        dfa = NFAtoDFA.convert(automaton);
+                    }
+                    DFA minDFA = dfa.minimize();
+                    minDFA.printInfo();
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file");
+                }
                 break;
-            case "--to-dfa-lazy":
-                System.out.println("Did not implement :(");
+            }
+            case "--to-dfa-full": {
+                String filePath = args[1];
+                // Expand the frontier in parallel or sequentially if asked, otherwise decide from
+                // the NFA size. Anything else is most likely a mistyped flag.
+                if (args.length > 3 || (args.length == 3 && !args[2].equals("--parallel") && !args[2].equals("--sequential"))) {
+                    System.out.println("Usage: java App --to-dfa-full <FILENAME> [--parallel | --sequential]");
+                    return;
+                }
+                try {
+                    Automaton automaton = loadAutomaton(filePath);
+                    DFA dfa;
+                    if (args.length > 2) {
+                        dfa = NFAtoDFA.convert(automaton, args[2].equals("--parallel"));
+                    } else {
+                        dfa = NFAtoDFA.convert(automaton);
+                    }
+                    dfa.printInfo();
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file");
+                }
+                break;
+            }
+            case "--to-dfa-lazy": {
+                String filePath = args[1];
+                try {
+                    Automaton automaton = loadAutomaton(filePath);
+                    // One lazy DFA is shared by every input so cached transitions are reused
+                    LazyDFA lazy = new LazyDFA(CompiledNFA.compile(automaton));
+                    for (int i = 2; i < args.length; i++) {
+                        boolean result = lazy.run(args[i]);
+                        System.out.println("Running on input [" + args[i] + "]: " + (result ? "accept" : "reject"));
+                    }
+                    System.out.println("Cached states: " + lazy.getCachedStates() + " (" + lazy.getCacheBytes() + " bytes)");
+                    System.out.println("Cache hits: " + lazy.getHits() + ", misses: " + lazy.getMisses() + ", flushes: " + lazy.getFlushes());
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading the file");
+                }
+                break;
+            }
+            case "--compile": {
+                String filePath = args[1];
+                String outPath = args[2];
+                try {
+                    CompiledDFA compiled = loadCompiledDFA(filePath);
+                    // Recorded so a run of the file reports missing transitions only for a DFA
+                    int flags = AutomatonCache.shared().isCompiledFromDFA(filePath) ? 0 : CompiledDFAFile.FROM_NFA;
+                    CompiledDFAFile.write(compiled, outPath, 0L, flags);
+                    System.out.println("Wrote " + compiled.getNumStates() + " states and " + compiled.getSymbols().size() + " symbols to " + outPath);
+                } catch (IOException e) {
+                    reportError(e, "An issue occurred while reading or writing the file");
+                }
+                break;
+            }
+            case "--serve": {
+                // A loopback port, or unix:<PATH> for a Unix domain socket
+                String address = args.length > 1 ? args[1] : "7070";
+                if (!address.startsWith("unix:") && !isPort(address)) {
+                    System.out.println("Usage: java App --serve [<PORT> | unix:<PATH>]");
+                    break;
+                }
+                try {
+                    new MatcherServer(App::loadMatcher).serve(address);
+                } catch (IOException e) {
+                    System.out.println("An issue occurred while listening on " + address + ": " + e.getMessage());
+                }
                 break;
+            }
             default:
                 System.out.println("Please enter a valid action");
                 break;
         }
     }
+
+    //cases for handling each type of automata
+    private static void printInfo(Automaton automaton) {
+        switch (automaton.getType()) {
+            case "DFA": {
+                DFA dfa = new DFA(automaton);
+                dfa.printInfo();
+                break;
+            }
+            case "NFA": {
+                NFA nfa = new NFA(automaton);
+                nfa.printInfo();
+                break;
+            }
+            case "EpsilonNFA": {
+                EpsilonNFA enfa = new EpsilonNFA(automaton);
+                enfa.printInfo();
+                break;
+            }
+            default:
+                System.out.println("Unsupported automaton type.");
+        }
+    }
+
+    // Reads an automaton from a text definition, a compiled DFA file or a regex: pattern.
+    // Loads go through the shared cache, so a file named twice is only read once.
+    private static Automaton loadAutomaton(String filePath) throws IOException {
+        return AutomatonCache.shared().getAutomaton(filePath);
+    }
+
+    // Like loadAutomaton, but a compiled DFA file is used as is instead of being expanded
+    // A deterministic table is compiled straight from its cells without building an Automaton.
+    private static CompiledDFA loadCompiledDFA(String filePath) throws IOException {
+        return AutomatonCache.shared().getCompiledDFA(filePath);
+    }
+
+    // Compiled DFA for a DFA, otherwise a lazily determinized DFA so memory stays bounded
+    private static DeterministicMatcher loadMatcher(String filePath) throws IOException {
+        return AutomatonCache.shared().getMatcher(filePath);
+    }
+
+    // Runs one input the way runDFA, runNFA or runENFA would, using the compiled DFA when
+    // there is one and a lazily determinized DFA otherwise. Only a DFA reports the
+    // missing transition it stopped at.
+    private static boolean runMatcher(String filePath, String input) throws IOException {
+        DeterministicMatcher matcher = loadMatcher(filePath);
+        if (matcher instanceof LazyDFA) {
+            return ((LazyDFA) matcher).run(input);
+        }
+        CompiledDFA dfa = (CompiledDFA) matcher;
+        return AutomatonCache.shared().isCompiledFromDFA(filePath) ? dfa.run(input) : dfa.accepts(input);
+    }
+
+    // Parse errors say where the file is wrong, other failures get the usual message
+    private static void reportError(IOException e, String message) {
+        if (e instanceof AutomatonParseException) {
+            System.out.println("Invalid automaton file " + e.getMessage());
+        } else {
+            System.out.println(message);
+        }
+    }
+
+    // Compiled DFA for any automaton, using the subset construction for NFAs
+    private static CompiledDFA buildCompiledDFA(Automaton automaton) {
+        return AutomatonCache.compile(automaton);
+    }
+
+    // Arguments after the action that are not flags
+    private static List<String> fileArguments(String[] args) {
+        List<String> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                files.add(args[i]);
+            }
+        }
+        return files;
+    }
+
+    // Counts in long arithmetic, so every line is a residue modulo the modulus
+    private static void printCountsModulo(CompiledDFA dfa, long lengthLimit, long modulus) {
+        String suffix = " (mod " + modulus + ")";
+        if (lengthLimit <= LanguageCounter.PER_LENGTH_LIMIT) {
+            long[] counts = LanguageCounter.countByLength(dfa, (int) lengthLimit, modulus);
+            long total = 0;
+            for (int len = 0; len < counts.length; len++) {
+                total = (total + counts[len]) % modulus;
+                System.out.println("Length " + len + ": " + counts[len] + suffix);
+            }
+            System.out.println("Total up to length " + lengthLimit + ": " + total + suffix);
+        } else {
+            long[] counts = LanguageCounter.countByPower(dfa, lengthLimit, modulus);
+            System.out.println("Length " + lengthLimit + ": " + counts[0] + suffix);
+            System.out.println("Total up to length " + lengthLimit + ": " + counts[1] + suffix);
+        }
+    }
+
+    // Value following an option anywhere after the action, or null if it is not given
+    private static String optionValue(String[] args, String option) {
+        for (int i = 1; i + 1 < args.length; i++) {
+            if (args[i].equals(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    // Profiles go to a file named on the command line, so the note goes to stderr to
+    // keep stdout to the results
+    private static void writeProfile(TransitionProfile profile, String path) throws IOException {
+        if (profile != null) {
+            profile.write(path);
+            System.err.println("Wrote transition profile to " + path);
+        }
+    }
+
+    private static boolean isPort(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            return port >= 0 && port <= 65535;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // True if the flag appears anywhere after the action
+    private static boolean hasFlag(String[] args, String flag) {
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -4,42 +4,228 @@
 
 import java.util.*;
 
+// States and symbols are interned to dense int ids once, when the automaton is built,
+// and every structure below is a primitive array indexed by those ids. Names are only
+// kept to print and look states up. The Set and Map getters are read-only views over
+// the arrays, so they cost nothing until they are used.
 public class Automaton {
-  
-    private Set<String> states;            
-    
-    private Set<String> alphabet;       
-    
-    private String initialState;         
 
-    private Set<String> acceptStates;     
+    private String[] stateNames;
+    // Built on the first lookup by name. Automata are shared between threads through the
+    // cache, so it is volatile to publish the finished map to every thread that reads it.
+    private volatile Map<String, Integer> stateIndex;
+
+    // Alphabet symbols in their given order, then any symbol only used by a transition
+    private String[] symbols;
+    private int alphabetSize;
+    private Map<String, Integer> symbolIndex;
+
+    private String initialState;
+
+    // Accept states in the order they were given, and as a bitset for lookups
+    private int[] acceptOrder;
+    private BitSet accepting;
+
+    // Cell (s, a) holds targets[cellStart[s * symbols + a] .. cellStart[s * symbols + a + 1]].
+    // Only states in hasRow have a transition map and only cells in definedCells map to a set.
+    private BitSet hasRow;
+    private BitSet definedCells;
+    private int[] cellStart;
+    private int[] targets;
+
+    // Epsilon moves of s are epsilonTargets[epsilonStart[s] .. epsilonStart[s + 1]] for the
+    // states in hasEpsilon. epsilonStart is null when no epsilon map was given at all.
+    private BitSet hasEpsilon;
+    private int[] epsilonStart;
+    private int[] epsilonTargets;
 
-    private Map<String, Map<String, Set<String>>> transitions;
-    
     private String automatonType;
 
-    private Map<String, Set<String>> epsilonTransitions;
-    
     // Constructor
-    public Automaton(Set<String> states, Set<String> alphabet, String initialState, 
-                     Set<String> acceptStates, Map<String, Map<String, Set<String>>> transitions, 
+    public Automaton(Set<String> states, Set<String> alphabet, String initialState,
+                     Set<String> acceptStates, Map<String, Map<String, Set<String>>> transitions,
                      String automatonType, Map<String, Set<String>> epsilonTransitions) {
-        this.states = states;
-        this.alphabet = alphabet;
+        // Intern every name first. States keep the order of the given set, so the views
+        // iterate the same way the sets passed in did.
+        Map<String, Integer> index = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (String state : states) {
+            intern(state, index, names);
+        }
+        for (String state : acceptStates) {
+            intern(state, index, names);
+        }
+        Map<String, Integer> symbolIds = new HashMap<>();
+        List<String> symbolList = new ArrayList<>();
+        for (String symbol : alphabet) {
+            intern(symbol, symbolIds, symbolList);
+        }
+        int givenSymbols = symbolList.size();
+        for (Map.Entry<String, Map<String, Set<String>>> row : transitions.entrySet()) {
+            intern(row.getKey(), index, names);
+            for (Map.Entry<String, Set<String>> cell : row.getValue().entrySet()) {
+                intern(cell.getKey(), symbolIds, symbolList);
+                for (String target : cell.getValue()) {
+                    intern(target, index, names);
+                }
+            }
+        }
+        if (epsilonTransitions != null) {
+            for (Map.Entry<String, Set<String>> row : epsilonTransitions.entrySet()) {
+                intern(row.getKey(), index, names);
+                for (String target : row.getValue()) {
+                    intern(target, index, names);
+                }
+            }
+        }
+
+        int numStates = names.size();
+        int numSymbols = symbolList.size();
+        int[] acceptIds = new int[acceptStates.size()];
+        int count = 0;
+        for (String state : acceptStates) {
+            acceptIds[count++] = index.get(state);
+        }
+
+        BitSet rows = new BitSet(numStates);
+        BitSet defined = new BitSet();
+        int[] starts = new int[numStates * numSymbols + 1];
+        int[] cells = new int[16];
+        count = 0;
+        for (int s = 0; s < numStates; s++) {
+            Map<String, Set<String>> row = transitions.get(names.get(s));
+            if (row != null) {
+                rows.set(s);
+            }
+            for (int a = 0; a < numSymbols; a++) {
+                starts[s * numSymbols + a] = count;
+                Set<String> cell = row == null ? null : row.get(symbolList.get(a));
+                if (cell == null) {
+                    continue;
+                }
+                defined.set(s * numSymbols + a);
+                for (String target : cell) {
+                    if (count == cells.length) {
+                        cells = Arrays.copyOf(cells, count * 2);
+                    }
+                    cells[count++] = index.get(target);
+                }
+            }
+        }
+        starts[numStates * numSymbols] = count;
+
+        BitSet epsilonRows = new BitSet(numStates);
+        int[] epsilonStarts = null;
+        int[] epsilonCells = new int[0];
+        if (epsilonTransitions != null) {
+            epsilonStarts = new int[numStates + 1];
+            epsilonCells = new int[16];
+            count = 0;
+            for (int s = 0; s < numStates; s++) {
+                epsilonStarts[s] = count;
+                Set<String> moves = epsilonTransitions.get(names.get(s));
+                if (moves == null) {
+                    continue;
+                }
+                epsilonRows.set(s);
+                for (String target : moves) {
+                    if (count == epsilonCells.length) {
+                        epsilonCells = Arrays.copyOf(epsilonCells, count * 2);
+                    }
+                    epsilonCells[count++] = index.get(target);
+                }
+            }
+            epsilonStarts[numStates] = count;
+            epsilonCells = Arrays.copyOf(epsilonCells, count);
+        }
+
+        init(names.toArray(new String[0]), symbolList.toArray(new String[0]), givenSymbols, initialState,
+                acceptIds, rows, defined, starts, Arrays.copyOf(cells, starts[numStates * numSymbols]),
+                epsilonRows, epsilonStarts, epsilonCells, automatonType);
+        this.stateIndex = index;
+    }
+
+    // Builds an automaton straight from interned arrays, see the fields for their layout
+    Automaton(String[] stateNames, String[] symbols, int alphabetSize, String initialState, int[] acceptOrder,
+              BitSet hasRow, BitSet definedCells, int[] cellStart, int[] targets,
+              BitSet hasEpsilon, int[] epsilonStart, int[] epsilonTargets, String automatonType) {
+        init(stateNames, symbols, alphabetSize, initialState, acceptOrder, hasRow, definedCells, cellStart, targets,
+                hasEpsilon, epsilonStart, epsilonTargets, automatonType);
+    }
+
+    // Shares the tables of another automaton, they are never modified after construction
+    protected Automaton(Automaton other, String automatonType) {
+        this.stateNames = other.stateNames;
+        this.stateIndex = other.stateIndex;
+        this.symbols = other.symbols;
+        this.alphabetSize = other.alphabetSize;
+        this.symbolIndex = other.symbolIndex;
+        this.initialState = other.initialState;
+        this.acceptOrder = other.acceptOrder;
+        this.accepting = other.accepting;
+        this.hasRow = other.hasRow;
+        this.definedCells = other.definedCells;
+        this.cellStart = other.cellStart;
+        this.targets = other.targets;
+        this.hasEpsilon = other.hasEpsilon;
+        this.epsilonStart = other.epsilonStart;
+        this.epsilonTargets = other.epsilonTargets;
+        this.automatonType = automatonType;
+    }
+
+    private void init(String[] stateNames, String[] symbols, int alphabetSize, String initialState, int[] acceptOrder,
+                      BitSet hasRow, BitSet definedCells, int[] cellStart, int[] targets,
+                      BitSet hasEpsilon, int[] epsilonStart, int[] epsilonTargets, String automatonType) {
+        this.stateNames = stateNames;
+        this.symbols = symbols;
+        this.alphabetSize = alphabetSize;
+        this.symbolIndex = new HashMap<>();
+        for (int a = 0; a < symbols.length; a++) {
+            symbolIndex.put(symbols[a], a);
+        }
         this.initialState = initialState;
-        this.acceptStates = acceptStates;
-        this.transitions = transitions;
+        this.acceptOrder = acceptOrder;
+        this.accepting = new BitSet(stateNames.length);
+        for (int s : acceptOrder) {
+            accepting.set(s);
+        }
+        this.hasRow = hasRow;
+        this.definedCells = definedCells;
+        this.cellStart = cellStart;
+        this.targets = targets;
+        this.hasEpsilon = hasEpsilon;
+        this.epsilonStart = epsilonStart;
+        this.epsilonTargets = epsilonTargets;
         this.automatonType = automatonType;
-        this.epsilonTransitions = epsilonTransitions;
+    }
+
+    private static void intern(String name, Map<String, Integer> index, List<String> names) {
+        if (!index.containsKey(name)) {
+            index.put(name, names.size());
+            names.add(name);
+        }
     }
 
     // Getter methods for attributes
     public Set<String> getStates() {
-        return states;
+        return new NameSet(null, 0, stateNames.length, null);
     }
 
     public Set<String> getAlphabet() {
-        return alphabet;
+        return new AbstractSet<String>() {
+            public Iterator<String> iterator() {
+                return Arrays.asList(symbols).subList(0, alphabetSize).iterator();
+            }
+
+            public int size() {
+                return alphabetSize;
+            }
+
+            public boolean contains(Object o) {
+                Integer a = symbolIndex.get(o);
+                return a != null && a < alphabetSize;
+            }
+        };
     }
 
     public String getInitialState() {
@@ -47,15 +233,91 @@ public class Automaton {
     }
 
     public Set<String> getAcceptStates() {
-        return acceptStates;
+        return new NameSet(acceptOrder, 0, acceptOrder.length, accepting);
     }
 
     public Map<String, Map<String, Set<String>>> getTransitions() {
-        return transitions;
+        return new AbstractMap<String, Map<String, Set<String>>>() {
+            public Map<String, Set<String>> get(Object key) {
+                int s = key instanceof String ? getStateIndex((String) key) : -1;
+                return s >= 0 && hasRow.get(s) ? new Row(s) : null;
+            }
+
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            public Set<Map.Entry<String, Map<String, Set<String>>>> entrySet() {
+                return new AbstractSet<Map.Entry<String, Map<String, Set<String>>>>() {
+                    public Iterator<Map.Entry<String, Map<String, Set<String>>>> iterator() {
+                        return new Iterator<Map.Entry<String, Map<String, Set<String>>>>() {
+                            private int next = hasRow.nextSetBit(0);
+
+                            public boolean hasNext() {
+                                return next >= 0;
+                            }
+
+                            public Map.Entry<String, Map<String, Set<String>>> next() {
+                                if (next < 0) {
+                                    throw new NoSuchElementException();
+                                }
+                                int s = next;
+                                next = hasRow.nextSetBit(s + 1);
+                                return new AbstractMap.SimpleImmutableEntry<>(stateNames[s], new Row(s));
+                            }
+                        };
+                    }
+
+                    public int size() {
+                        return hasRow.cardinality();
+                    }
+                };
+            }
+        };
     }
 
     public Map<String, Set<String>> getEpsilonTransitions() {
-        return epsilonTransitions;
+        if (epsilonStart == null) {
+            return null;
+        }
+        return new AbstractMap<String, Set<String>>() {
+            public Set<String> get(Object key) {
+                int s = key instanceof String ? getStateIndex((String) key) : -1;
+                return s >= 0 && hasEpsilon.get(s) ? new NameSet(epsilonTargets, epsilonStart[s], epsilonStart[s + 1], null) : null;
+            }
+
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            public Set<Map.Entry<String, Set<String>>> entrySet() {
+                return new AbstractSet<Map.Entry<String, Set<String>>>() {
+                    public Iterator<Map.Entry<String, Set<String>>> iterator() {
+                        return new Iterator<Map.Entry<String, Set<String>>>() {
+                            private int next = hasEpsilon.nextSetBit(0);
+
+                            public boolean hasNext() {
+                                return next >= 0;
+                            }
+
+                            public Map.Entry<String, Set<String>> next() {
+                                if (next < 0) {
+                                    throw new NoSuchElementException();
+                                }
+                                int s = next;
+                                next = hasEpsilon.nextSetBit(s + 1);
+                                return new AbstractMap.SimpleImmutableEntry<>(stateNames[s],
+                                        new NameSet(epsilonTargets, epsilonStart[s], epsilonStart[s + 1], null));
+                            }
+                        };
+                    }
+
+                    public int size() {
+                        return hasEpsilon.cardinality();
+                    }
+                };
+            }
+        };
     }
 
     public String getType(){
@@ -63,18 +325,233 @@ public class Automaton {
     }
 
     public boolean isAcceptingState(String state) {
-        return acceptStates.contains(state);
+        int s = getStateIndex(state);
+        return s >= 0 && accepting.get(s);
     }
 
     public Set<String> getNextStates(String currentState, String input) {
-        if(transitions.containsKey(currentState)) {
-            Map<String, Set<String>> stateTransitions = transitions.get(currentState);
-            if(stateTransitions.containsKey(input)) {
-                return stateTransitions.get(input);
-            }
+        int s = getStateIndex(currentState);
+        Integer a = symbolIndex.get(input);
+        if (s >= 0 && a != null && definedCells.get(s * symbols.length + a)) {
+            return cell(s, a);
         }
         return Set.of();
     }
 
-}
+    // Integer access to the interned tables
+
+    // Approximate heap footprint in bytes of the names and tables
+    public long estimateSize() {
+        long bytes = 64L;
+        for (String name : stateNames) {
+            bytes += 48L + name.length();
+        }
+        if (stateIndex != null) {
+            bytes += 48L * stateNames.length;
+        }
+        bytes += 4L * (acceptOrder.length + cellStart.length + targets.length + epsilonTargets.length);
+        if (epsilonStart != null) {
+            bytes += 4L * epsilonStart.length;
+        }
+        bytes += (accepting.size() + hasRow.size() + definedCells.size() + hasEpsilon.size()) / 8;
+        return bytes;
+    }
+
+    public int getNumStates() {
+        return stateNames.length;
+    }
+
+    public String getStateName(int state) {
+        return stateNames[state];
+    }
 
+    // Index of the named state, or -1 if there is no such state
+    public int getStateIndex(String name) {
+        Map<String, Integer> index = stateIndex;
+        if (index == null) {
+            index = new HashMap<>();
+            for (int s = 0; s < stateNames.length; s++) {
+                index.put(stateNames[s], s);
+            }
+            stateIndex = index;
+        }
+        Integer s = index.get(name);
+        return s == null ? -1 : s;
+    }
+
+    // State ids ordered by name, which is how the compiled forms number their states
+    public int[] getStatesSortedByName() {
+        Integer[] order = new Integer[stateNames.length];
+        for (int s = 0; s < order.length; s++) {
+            order[s] = s;
+        }
+        Arrays.sort(order, (x, y) -> stateNames[x].compareTo(stateNames[y]));
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    // All interned symbols, the alphabet first
+    public int getNumSymbols() {
+        return symbols.length;
+    }
+
+    public String getSymbol(int symbol) {
+        return symbols[symbol];
+    }
+
+    // Index of the symbol, or -1 if no transition or alphabet entry uses it
+    public int getSymbolIndex(String symbol) {
+        Integer a = symbolIndex.get(symbol);
+        return a == null ? -1 : a;
+    }
+
+    // Index of the initial state, or -1 if it is not one of the states
+    public int getInitialStateIndex() {
+        return getStateIndex(initialState);
+    }
+
+    public boolean isAccepting(int state) {
+        return accepting.get(state);
+    }
+
+    public int getAlphabetSize() {
+        return alphabetSize;
+    }
+
+    // True if the state has a transition map, even an empty one
+    public boolean hasTransitionRow(int state) {
+        return hasRow.get(state);
+    }
+
+    // True if the state's map has an entry for the symbol, even an empty set
+    public boolean hasTransitionCell(int state, int symbol) {
+        return definedCells.get(state * symbols.length + symbol);
+    }
+
+    public boolean hasEpsilonRow(int state) {
+        return hasEpsilon.get(state);
+    }
+
+    public int getNumTargets(int state, int symbol) {
+        int cell = state * symbols.length + symbol;
+        return cellStart[cell + 1] - cellStart[cell];
+    }
+
+    public int getTarget(int state, int symbol, int i) {
+        return targets[cellStart[state * symbols.length + symbol] + i];
+    }
+
+    public boolean hasEpsilonTransitions() {
+        return epsilonStart != null && epsilonStart[stateNames.length] > 0;
+    }
+
+    public int getNumEpsilonTargets(int state) {
+        return epsilonStart == null ? 0 : epsilonStart[state + 1] - epsilonStart[state];
+    }
+
+    public int getEpsilonTarget(int state, int i) {
+        return epsilonTargets[epsilonStart[state] + i];
+    }
+
+    private Set<String> cell(int state, int symbol) {
+        int cell = state * symbols.length + symbol;
+        return new NameSet(targets, cellStart[cell], cellStart[cell + 1], null);
+    }
+
+    // One state's transition map, a view over its cells
+    private final class Row extends AbstractMap<String, Set<String>> {
+        private final int state;
+
+        Row(int state) {
+            this.state = state;
+        }
+
+        public Set<String> get(Object key) {
+            Integer a = symbolIndex.get(key);
+            return a != null && definedCells.get(state * symbols.length + a) ? cell(state, a) : null;
+        }
+
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        public Set<Map.Entry<String, Set<String>>> entrySet() {
+            List<Map.Entry<String, Set<String>>> entries = new ArrayList<>();
+            for (int a = 0; a < symbols.length; a++) {
+                if (definedCells.get(state * symbols.length + a)) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(symbols[a], cell(state, a)));
+                }
+            }
+            return new AbstractSet<Map.Entry<String, Set<String>>>() {
+                public Iterator<Map.Entry<String, Set<String>>> iterator() {
+                    return entries.iterator();
+                }
+
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+    }
+
+    // Names of ids[from..to), or of every state when ids is null. Membership uses the
+    // bitset when there is one and a scan otherwise, which suits the small cells.
+    private final class NameSet extends AbstractSet<String> {
+        private final int[] ids;
+        private final int from;
+        private final int to;
+        private final BitSet members;
+
+        NameSet(int[] ids, int from, int to, BitSet members) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.members = members;
+        }
+
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int next = from;
+
+                public boolean hasNext() {
+                    return next < to;
+                }
+
+                public String next() {
+                    if (next >= to) {
+                        throw new NoSuchElementException();
+                    }
+                    int i = next++;
+                    return stateNames[ids == null ? i : ids[i]];
+                }
+            };
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        public boolean contains(Object o) {
+            int s = o instanceof String ? getStateIndex((String) o) : -1;
+            if (s < 0) {
+                return false;
+            }
+            if (ids == null) {
+                return true;
+            }
+            if (members != null) {
+                return members.get(s);
+            }
+            for (int i = from; i < to; i++) {
+                if (ids[i] == s) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
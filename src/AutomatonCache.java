@@ -0,0 +1,262 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+// Process wide cache of loaded automata, so a file named twice on one command, or
+// loaded again by a server, is only parsed and compiled once. Entries are keyed by
+// the canonical path, size and modification time of the file, so an edited file is
+// read again. A regex: pattern is keyed by its text. Each entry holds the parsed
+// Automaton and the CompiledDFA, each built the first time it is asked for. Least
+// recently used entries are evicted once their estimated heap size passes the cap.
+//
+// Parsing and compiling happen under the entry's own lock, so a thread building one
+// large automaton does not hold up threads loading others. The cache's lock is only
+// held to find entries and count their size, always after an entry's lock if both are.
+//
+// With the disk tier on, a compiled DFA is also written next to its text file as
+// <FILENAME>.cdfa, stamped with the file's size and modification time, and a later
+// process loads that instead of parsing and compiling again.
+public class AutomatonCache {
+
+    // Suffix of the compiled files written by the disk tier
+    public static final String DISK_SUFFIX = ".cdfa";
+
+    private static final AutomatonCache SHARED = new AutomatonCache(Runtime.getRuntime().maxMemory() / 4);
+
+    private static final class Entry {
+        final String key;
+        Automaton automaton;
+        CompiledDFA compiled;
+        // True if compiled came from an NFA rather than being the automaton itself
+        boolean fromNFA;
+        // Estimated size of each form, 0 until it is counted, only used under the cache's lock
+        long automatonBytes;
+        long compiledBytes;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long maxBytes;
+    // Iterates from least to most recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private volatile boolean diskTier;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long diskHits;
+
+    public AutomatonCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static AutomatonCache shared() {
+        return SHARED;
+    }
+
+    public void setDiskTier(boolean enabled) {
+        this.diskTier = enabled;
+    }
+
+    // Reads an automaton from a text definition, a compiled DFA file or a regex: pattern
+    public Automaton getAutomaton(String filePath) throws IOException {
+        Entry entry = lookup(filePath);
+        synchronized (entry) {
+            if (entry.automaton == null) {
+                if (RegexParser.isPattern(filePath)) {
+                    entry.automaton = RegexParser.parse(filePath);
+                } else if (CompiledDFAFile.isCompiledFile(filePath)) {
+                    entry.automaton = compiled(filePath, entry, true).toDFA();
+                } else {
+                    entry.automaton = FileParser.parseFile(filePath);
+                }
+                resize(entry);
+            }
+            return entry.automaton;
+        }
+    }
+
+    // A compiled DFA file is used as is, and a deterministic table is compiled straight
+    // from its cells without building an Automaton. Other automata are determinized.
+    public CompiledDFA getCompiledDFA(String filePath) throws IOException {
+        Entry entry = lookup(filePath);
+        synchronized (entry) {
+            compiled(filePath, entry, true);
+            resize(entry);
+            return entry.compiled;
+        }
+    }
+
+    // True unless the compiled DFA was determinized from an NFA, or could only be run as
+    // one. Such a DFA stands in for the NFA but has states of its own.
+    public boolean isCompiledFromDFA(String filePath) throws IOException {
+        Entry entry = lookup(filePath);
+        synchronized (entry) {
+            compiled(filePath, entry, false);
+            resize(entry);
+            return !entry.fromNFA;
+        }
+    }
+
+    // The compiled DFA if it needs no subset construction, otherwise a new lazily
+    // determinized DFA, which is not cached since it changes as it runs
+    public DeterministicMatcher getMatcher(String filePath) throws IOException {
+        Entry entry = lookup(filePath);
+        synchronized (entry) {
+            CompiledDFA dfa = compiled(filePath, entry, false);
+            resize(entry);
+            return dfa != null ? dfa : new LazyDFA(CompiledNFA.compile(entry.automaton));
+        }
+    }
+
+    // Fills in the entry's compiled DFA. Without determinize an NFA is only parsed, and null
+    // is returned unless a compiled DFA was already at hand.
+    private CompiledDFA compiled(String filePath, Entry entry, boolean determinize) throws IOException {
+        if (entry.compiled != null) {
+            return entry.compiled;
+        }
+        if (!RegexParser.isPattern(filePath) && CompiledDFAFile.isCompiledFile(filePath)) {
+            entry.compiled = CompiledDFAFile.load(filePath);
+            entry.fromNFA = (CompiledDFAFile.readFlags(filePath) & CompiledDFAFile.FROM_NFA) != 0;
+            return entry.compiled;
+        }
+        boolean onDisk = diskTier && !RegexParser.isPattern(filePath);
+        long stamp = onDisk ? stamp(filePath) : 0L;
+        String diskPath = filePath + DISK_SUFFIX;
+        if (onDisk && CompiledDFAFile.readSourceStamp(diskPath) == stamp) {
+            try {
+                entry.compiled = CompiledDFAFile.load(diskPath);
+                entry.fromNFA = (CompiledDFAFile.readFlags(diskPath) & CompiledDFAFile.FROM_NFA) != 0;
+                synchronized (this) {
+                    diskHits++;
+                }
+                return entry.compiled;
+            } catch (IOException | RuntimeException e) {
+                // A damaged copy is a miss, and is replaced once the file is compiled again
+            }
+        }
+
+        if (entry.automaton == null) {
+            AutomatonTable table = RegexParser.isPattern(filePath) ? RegexParser.parseTable(filePath) : FileParser.parseTable(filePath);
+            if (table.isDeterministic()) {
+                entry.compiled = table.toCompiledDFA();
+            } else {
+                entry.automaton = table.toAutomaton();
+            }
+            entry.fromNFA = !table.getType().equals("DFA");
+        } else {
+            entry.fromNFA = !entry.automaton.getType().equals("DFA");
+        }
+        if (entry.compiled == null && (determinize || entry.automaton.getType().equals("DFA"))) {
+            entry.compiled = compile(entry.automaton);
+        }
+        if (onDisk && entry.compiled != null) {
+            try {
+                CompiledDFAFile.write(entry.compiled, diskPath, stamp, entry.fromNFA ? CompiledDFAFile.FROM_NFA : 0);
+            } catch (IOException e) {
+                // The disk tier is only a cache, the next run compiles again
+            }
+        }
+        return entry.compiled;
+    }
+
+    // Compiled DFA for any automaton, using the subset construction for NFAs
+    public static CompiledDFA compile(Automaton automaton) {
+        if (automaton.getType().equals("DFA")) {
+            DFA dfa = new DFA(automaton);
+            return dfa.getCompiled();
+        }
+        return NFAtoDFA.compile(CompiledNFA.compile(automaton));
+    }
+
+    private Entry lookup(String filePath) throws IOException {
+        String key = key(filePath);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+            misses++;
+            entry = new Entry(key);
+            entries.put(key, entry);
+            return entry;
+        }
+    }
+
+    private static String key(String filePath) throws IOException {
+        if (RegexParser.isPattern(filePath)) {
+            return filePath;
+        }
+        Path path = Paths.get(filePath).toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return path + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+    }
+
+    // Mix of the file's size and modification time, never 0
+    private static long stamp(String filePath) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
+        long h = attributes.size() * 0x9E3779B97F4A7C15L ^ attributes.lastModifiedTime().toMillis();
+        h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+        return h == 0L ? 1L : h;
+    }
+
+    // Counts the forms added to the entry and evicts from the cold end. Called holding the
+    // entry's lock. An entry evicted while it was being built is not counted again.
+    private synchronized void resize(Entry entry) {
+        if (entries.get(entry.key) != entry) {
+            return;
+        }
+        if (entry.automaton != null && entry.automatonBytes == 0) {
+            entry.automatonBytes = entry.automaton.estimateSize();
+            bytes += entry.automatonBytes;
+        }
+        if (entry.compiled != null && entry.compiledBytes == 0) {
+            entry.compiledBytes = entry.compiled.estimateSize();
+            bytes += entry.compiledBytes;
+        }
+        Iterator<Entry> coldest = entries.values().iterator();
+        while (bytes > maxBytes && coldest.hasNext()) {
+            Entry victim = coldest.next();
+            // The entry just used is kept even if it is bigger than the cap on its own
+            if (victim == entry) {
+                continue;
+            }
+            bytes -= victim.automatonBytes + victim.compiledBytes;
+            coldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+}
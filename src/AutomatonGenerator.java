@@ -0,0 +1,280 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.util.*;
+
+// Writes random and structured automata in the transition table format read by
+// FileParser, along with input corpora for them, so parsing and running can be
+// tried at sizes far beyond the hand written examples.
+//
+// Families:
+//   dfa           random DFA, each transition present with probability density
+//   nfa           random NFA, about density successors per state and symbol
+//   enfa          random NFA plus an epsilon move from a state with probability epsilon
+//   kth-from-end  NFA for "the k-th symbol from the end is 1", k = states - 1. Its
+//                 minimal DFA has 2^k states, the worst case for subset construction.
+//   cycle         DFA counting symbols mod states, accepting multiples of states
+//   epsilon-chain epsilon-NFA whose states are joined by one long epsilon chain
+public class AutomatonGenerator {
+
+    // Symbols are single characters so every generated automaton can run on plain strings
+    private static final String SYMBOLS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final String family;
+    private final int numStates;
+    private final int numSymbols;
+    private final double density;
+    private final double epsilonRatio;
+    private final double acceptRatio;
+    private final Random random;
+
+    // Transitions in compressed rows: targets[offsets[s * numSymbols + a] .. offsets[s * numSymbols + a + 1])
+    private int[] offsets;
+    private int[] targets;
+    // epsilon[s] is the epsilon successor of s, or -1
+    private int[] epsilon;
+    private boolean[] accepting;
+    private boolean deterministic;
+    private boolean hasEpsilon;
+
+    public AutomatonGenerator(String family, int numStates, int numSymbols, double density, double epsilonRatio, double acceptRatio, long seed) {
+        if (numSymbols < 1 || numSymbols > SYMBOLS.length()) {
+            throw new IllegalArgumentException("The alphabet size must be between 1 and " + SYMBOLS.length());
+        }
+        if (numStates < 1) {
+            throw new IllegalArgumentException("There must be at least one state");
+        }
+        this.family = family;
+        this.numStates = numStates;
+        this.numSymbols = numSymbols;
+        this.density = density;
+        this.epsilonRatio = epsilonRatio;
+        this.acceptRatio = acceptRatio;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java AutomatonGenerator <dfa|nfa|enfa|kth-from-end|cycle|epsilon-chain> [options]");
+            System.out.println("  --states N     number of states (default 100)");
+            System.out.println("  --symbols K    alphabet size, at most " + SYMBOLS.length() + " (default 2)");
+            System.out.println("  --density D    transition density (default 1.0)");
+            System.out.println("  --epsilon R    share of states with an epsilon move (default 0.1)");
+            System.out.println("  --accept P     share of accepting states (default 0.25)");
+            System.out.println("  --seed S       random seed (default 1)");
+            System.out.println("  --out FILE     where to write the table (default stdout)");
+            System.out.println("  --corpus FILE  also write input strings, one per line");
+            System.out.println("  --count M      number of input strings (default 1000)");
+            System.out.println("  --length L     longest input string (default 100)");
+            return;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        AutomatonGenerator generator = new AutomatonGenerator(args[0],
+                Integer.parseInt(options.getOrDefault("--states", "100")),
+                Integer.parseInt(options.getOrDefault("--symbols", "2")),
+                Double.parseDouble(options.getOrDefault("--density", "1.0")),
+                Double.parseDouble(options.getOrDefault("--epsilon", "0.1")),
+                Double.parseDouble(options.getOrDefault("--accept", "0.25")),
+                Long.parseLong(options.getOrDefault("--seed", "1")));
+        generator.generate();
+
+        String out = options.get("--out");
+        try (Writer writer = out == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16)
+                : new BufferedWriter(new FileWriter(out), 1 << 16)) {
+            generator.writeTable(writer);
+        }
+        String corpus = options.get("--corpus");
+        if (corpus != null) {
+            try (Writer writer = new BufferedWriter(new FileWriter(corpus), 1 << 16)) {
+                generator.writeCorpus(writer, Integer.parseInt(options.getOrDefault("--count", "1000")),
+                        Integer.parseInt(options.getOrDefault("--length", "100")));
+            }
+        }
+    }
+
+    public void generate() {
+        offsets = new int[numStates * numSymbols + 1];
+        epsilon = new int[numStates];
+        Arrays.fill(epsilon, -1);
+        accepting = new boolean[numStates];
+        IntList list = new IntList();
+
+        switch (family) {
+            case "dfa":
+                deterministic = true;
+                for (int cell = 0; cell < numStates * numSymbols; cell++) {
+                    if (random.nextDouble() < density) {
+                        list.add(random.nextInt(numStates));
+                    }
+                    offsets[cell + 1] = list.size;
+                }
+                randomAccepting();
+                break;
+            case "nfa":
+            case "enfa":
+                for (int cell = 0; cell < numStates * numSymbols; cell++) {
+                    // About density successors, the fraction deciding one extra
+                    int count = (int) density + (random.nextDouble() < density - (int) density ? 1 : 0);
+                    for (int i = 0; i < count; i++) {
+                        list.add(random.nextInt(numStates));
+                    }
+                    offsets[cell + 1] = list.size;
+                }
+                if (family.equals("enfa")) {
+                    hasEpsilon = true;
+                    for (int s = 0; s < numStates; s++) {
+                        if (random.nextDouble() < epsilonRatio) {
+                            epsilon[s] = random.nextInt(numStates);
+                        }
+                    }
+                }
+                randomAccepting();
+                break;
+            case "kth-from-end":
+                // q0 loops on everything and guesses the 1, then q1 .. qk count the rest
+                for (int s = 0; s < numStates; s++) {
+                    for (int a = 0; a < numSymbols; a++) {
+                        if (s == 0) {
+                            list.add(0);
+                            if (a == 1 % numSymbols && numStates > 1) {
+                                list.add(1);
+                            }
+                        } else if (s + 1 < numStates) {
+                            list.add(s + 1);
+                        }
+                        offsets[s * numSymbols + a + 1] = list.size;
+                    }
+                }
+                accepting[numStates - 1] = true;
+                break;
+            case "cycle":
+                deterministic = true;
+                for (int s = 0; s < numStates; s++) {
+                    for (int a = 0; a < numSymbols; a++) {
+                        list.add((s + 1) % numStates);
+                        offsets[s * numSymbols + a + 1] = list.size;
+                    }
+                }
+                accepting[0] = true;
+                break;
+            case "epsilon-chain":
+                hasEpsilon = true;
+                for (int s = 0; s < numStates; s++) {
+                    for (int a = 0; a < numSymbols; a++) {
+                        // Only every symbol-th state consumes that symbol, the chain does the rest
+                        if (s % numSymbols == a) {
+                            list.add(s);
+                        }
+                        offsets[s * numSymbols + a + 1] = list.size;
+                    }
+                    if (s + 1 < numStates) {
+                        epsilon[s] = s + 1;
+                    }
+                }
+                accepting[numStates - 1] = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown family: " + family);
+        }
+        targets = list.toArray();
+    }
+
+    private void randomAccepting() {
+        for (int s = 0; s < numStates; s++) {
+            accepting[s] = random.nextDouble() < acceptRatio;
+        }
+    }
+
+    public void writeTable(Writer out) throws IOException {
+        out.write("# Generated by AutomatonGenerator: " + family + ", " + numStates + " states, " + numSymbols + " symbols\n");
+        StringBuilder line = new StringBuilder("|");
+        for (int a = 0; a < numSymbols; a++) {
+            line.append(' ').append(SYMBOLS.charAt(a));
+        }
+        if (hasEpsilon) {
+            line.append(" epsilon");
+        }
+        out.write(line.append('\n').toString());
+
+        for (int s = 0; s < numStates; s++) {
+            line.setLength(0);
+            line.append(s == 0 ? "->" : "  ").append(accepting[s] ? " * " : "   ");
+            line.append('q').append(s).append(" |");
+            for (int a = 0; a < numSymbols; a++) {
+                int start = offsets[s * numSymbols + a];
+                int end = offsets[s * numSymbols + a + 1];
+                line.append(' ');
+                if (deterministic && end - start == 1) {
+                    line.append('q').append(targets[start]);
+                } else {
+                    line.append('{');
+                    for (int i = start; i < end; i++) {
+                        if (i > start) {
+                            line.append(',');
+                        }
+                        line.append('q').append(targets[i]);
+                    }
+                    line.append('}');
+                }
+            }
+            if (hasEpsilon) {
+                line.append(epsilon[s] >= 0 ? " {q" + epsilon[s] + "}" : " {}");
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    // Half the strings are uniformly random and half follow random paths through the
+    // automaton from its initial state, so both accepted and rejected inputs show up
+    public void writeCorpus(Writer out, int count, int maxLength) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            line.setLength(0);
+            int length = random.nextInt(maxLength + 1);
+            if (i % 2 == 0) {
+                for (int j = 0; j < length; j++) {
+                    line.append(SYMBOLS.charAt(random.nextInt(numSymbols)));
+                }
+            } else {
+                int state = 0;
+                for (int j = 0; j < length; j++) {
+                    if (epsilon[state] >= 0 && random.nextBoolean()) {
+                        state = epsilon[state];
+                    }
+                    int a = random.nextInt(numSymbols);
+                    int start = offsets[state * numSymbols + a];
+                    int end = offsets[state * numSymbols + a + 1];
+                    line.append(SYMBOLS.charAt(a));
+                    if (start == end) {
+                        break;
+                    }
+                    state = targets[start + random.nextInt(end - start)];
+                }
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    // Growable int array so a million state table does not box its targets
+    private static class IntList {
+        private int[] items = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.IOException;
+
+// Thrown when an automaton file is not a valid transition table
+public class AutomatonParseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+
+    public AutomatonParseException(String filePath, int lineNumber, String message) {
+        super(lineNumber > 0 ? filePath + ":" + lineNumber + ": " + message : filePath + ": " + message);
+        this.lineNumber = lineNumber;
+    }
+
+    // One based line of the problem, or 0 if it is not tied to a line
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Parsed transition table in integer form. States are numbered in the order they first
+// appear in the file and every cell lives in one flat array, so a DFA can be compiled
+// without building an Automaton first.
+public class AutomatonTable {
+
+    private final String[] stateNames;
+    // Header symbols in file order without duplicates, possibly including epsilon
+    private final String[] symbols;
+    private final int initialState;
+    private final boolean[] accepting;
+    // States that have their own line, in file order
+    private final int[] rowOrder;
+    // Cell a of state s holds targets[cellStart[s * symbols + a] .. cellStart[s * symbols + a + 1]]
+    private final int[] cellStart;
+    private final int[] targets;
+    private final String type;
+
+    AutomatonTable(String[] stateNames, String[] symbols, int initialState, boolean[] accepting,
+                   int[] rowOrder, int[] cellStart, int[] targets, String type) {
+        this.stateNames = stateNames;
+        this.symbols = symbols;
+        this.initialState = initialState;
+        this.accepting = accepting;
+        this.rowOrder = rowOrder;
+        this.cellStart = cellStart;
+        this.targets = targets;
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getNumStates() {
+        return stateNames.length;
+    }
+
+    // Targets over every cell, counting each epsilon target too
+    public int getNumTransitions() {
+        return targets.length;
+    }
+
+    // True if no cell has more than one target and there are no epsilon moves, so the
+    // table can be compiled as it is with DEAD for its empty cells
+    public boolean isDeterministic() {
+        if (type.equals("DFA")) {
+            return true;
+        }
+        if (Arrays.asList(symbols).contains("epsilon")) {
+            return false;
+        }
+        for (int c = 0; c + 1 < cellStart.length; c++) {
+            if (cellStart[c + 1] - cellStart[c] > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Interns straight into the Automaton's arrays. States, accept states and multi target
+    // cells are ordered the way a HashSet filled in file order would iterate them, so the
+    // printed sets come out as they always have.
+    public Automaton toAutomaton() {
+        try (Metrics.Phase phase = Metrics.start("intern")) {
+            phase.states(stateNames.length).transitions(targets.length);
+            return intern();
+        }
+    }
+
+    private Automaton intern() {
+        int numStates = stateNames.length;
+        int numSymbols = symbols.length;
+        Set<String> ordered = new HashSet<>();
+        for (String name : stateNames) {
+            ordered.add(name);
+        }
+        Map<String, Integer> index = new HashMap<>();
+        int[] newId = new int[numStates];
+        String[] names = new String[numStates];
+        for (String name : ordered) {
+            index.put(name, index.size());
+        }
+        for (int s = 0; s < numStates; s++) {
+            newId[s] = index.get(stateNames[s]);
+            names[newId[s]] = stateNames[s];
+        }
+
+        Set<String> acceptNames = new HashSet<>();
+        for (int s : rowOrder) {
+            if (accepting[s]) {
+                acceptNames.add(stateNames[s]);
+            }
+        }
+        int[] acceptOrder = new int[acceptNames.size()];
+        int count = 0;
+        for (String name : acceptNames) {
+            acceptOrder[count++] = index.get(name);
+        }
+
+        int epsilon = Arrays.asList(symbols).indexOf("epsilon");
+        BitSet hasRow = new BitSet(numStates);
+        BitSet definedCells = new BitSet();
+        BitSet hasEpsilon = new BitSet(numStates);
+        for (int s : rowOrder) {
+            int t = newId[s];
+            hasRow.set(t);
+            definedCells.set(t * numSymbols, (t + 1) * numSymbols);
+            if (epsilon >= 0) {
+                definedCells.clear(t * numSymbols + epsilon);
+                if (cellStart[s * numSymbols + epsilon] < cellStart[s * numSymbols + epsilon + 1]) {
+                    hasEpsilon.set(t);
+                }
+            }
+        }
+
+        int[] original = new int[numStates];
+        for (int s = 0; s < numStates; s++) {
+            original[newId[s]] = s;
+        }
+        int[] newCellStart = new int[numStates * numSymbols + 1];
+        int[] newTargets = new int[targets.length];
+        int[] epsilonStart = new int[numStates + 1];
+        int[] epsilonTargets = new int[epsilon < 0 ? 0 : targets.length];
+        count = 0;
+        int epsilonCount = 0;
+        for (int t = 0; t < numStates; t++) {
+            int s = original[t];
+            epsilonStart[t] = epsilonCount;
+            for (int a = 0; a < numSymbols; a++) {
+                newCellStart[t * numSymbols + a] = count;
+                if (a == epsilon) {
+                    epsilonCount = copyCell(s, a, newId, epsilonTargets, epsilonCount);
+                } else {
+                    count = copyCell(s, a, newId, newTargets, count);
+                }
+            }
+        }
+        newCellStart[numStates * numSymbols] = count;
+        epsilonStart[numStates] = epsilonCount;
+
+        return new Automaton(names, symbols, numSymbols, stateNames[initialState], acceptOrder,
+                hasRow, definedCells, newCellStart, Arrays.copyOf(newTargets, count),
+                hasEpsilon, epsilonStart, Arrays.copyOf(epsilonTargets, epsilonCount), type);
+    }
+
+    // Appends the renumbered targets of one cell, without duplicates. A HashMap iterates
+    // its keys in the same order as a HashSet of them.
+    private int copyCell(int state, int symbol, int[] newId, int[] out, int count) {
+        int from = cellStart[state * symbols.length + symbol];
+        int to = cellStart[state * symbols.length + symbol + 1];
+        if (to - from == 1) {
+            out[count++] = newId[targets[from]];
+        } else if (to - from > 1) {
+            Map<String, Integer> cell = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                cell.putIfAbsent(stateNames[targets[i]], targets[i]);
+            }
+            for (int target : cell.values()) {
+                out[count++] = newId[target];
+            }
+        }
+        return count;
+    }
+
+    // Same result as CompiledDFA.compile(toAutomaton()), straight from the flat cells
+    public CompiledDFA toCompiledDFA() {
+        if (!isDeterministic()) {
+            throw new IllegalStateException("Only a deterministic table can be compiled directly, this is a " + type);
+        }
+        try (Metrics.Phase phase = Metrics.start("compile-dfa")) {
+            CompiledDFA dfa = compileCells();
+            phase.states(dfa.getNumStates()).transitions(targets.length);
+            return dfa;
+        }
+    }
+
+    private CompiledDFA compileCells() {
+        int numStates = stateNames.length;
+        SymbolMap symbolMap = new SymbolMap(Arrays.asList(symbols));
+        int numSymbols = symbolMap.size();
+        int[] column = new int[symbols.length];
+        for (int a = 0; a < symbols.length; a++) {
+            column[a] = symbolMap.indexOf(symbols[a]);
+        }
+
+        // Number the states by name, as compile does
+        Integer[] byName = new Integer[numStates];
+        for (int s = 0; s < numStates; s++) {
+            byName[s] = s;
+        }
+        Arrays.sort(byName, (x, y) -> stateNames[x].compareTo(stateNames[y]));
+        int[] rank = new int[numStates];
+        String[] sortedNames = new String[numStates];
+        for (int i = 0; i < numStates; i++) {
+            rank[byName[i]] = i;
+            sortedNames[i] = stateNames[byName[i]];
+        }
+
+        int[] table = new int[numStates * numSymbols];
+        Arrays.fill(table, CompiledDFA.DEAD);
+        boolean[] compiledAccepting = new boolean[numStates];
+        for (int s = 0; s < numStates; s++) {
+            compiledAccepting[rank[s]] = accepting[s];
+            for (int a = 0; a < symbols.length; a++) {
+                int from = cellStart[s * symbols.length + a];
+                if (from < cellStart[s * symbols.length + a + 1]) {
+                    table[rank[s] * numSymbols + column[a]] = rank[targets[from]];
+                }
+            }
+        }
+        return new CompiledDFA(sortedNames, symbolMap, table, compiledAccepting, rank[initialState]);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+
+// Classifies newline separated candidates against one compiled DFA, grep style.
+// Lines are read in blocks, each block is classified in parallel across cores
+// and then written in input order through a buffered writer. The DFA is never
+// modified while running so every thread shares the same one.
+public class BatchRunner {
+
+    // Number of lines classified together
+    private static final int BLOCK_LINES = 1 << 14;
+
+    private final CompiledDFA dfa;
+    // Print the rejected lines instead of the accepted ones
+    private final boolean printRejected;
+
+    private long linesRead;
+    private long linesPrinted;
+
+    public BatchRunner(CompiledDFA dfa, boolean printRejected) {
+        this.dfa = dfa;
+        this.printRejected = printRejected;
+    }
+
+    public void run(BufferedReader reader, Writer out) throws IOException {
+        List<String> block = new ArrayList<>(BLOCK_LINES);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            block.add(line);
+            if (block.size() == BLOCK_LINES) {
+                runBlock(block, out);
+                block.clear();
+            }
+        }
+        runBlock(block, out);
+    }
+
+    private void runBlock(List<String> block, Writer out) throws IOException {
+        boolean[] accepted = new boolean[block.size()];
+        IntStream.range(0, block.size()).parallel().forEach(i -> accepted[i] = dfa.accepts(block.get(i)));
+        for (int i = 0; i < block.size(); i++) {
+            if (accepted[i] != printRejected) {
+                out.write(block.get(i));
+                out.write('\n');
+                linesPrinted++;
+            }
+        }
+        linesRead += block.size();
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public long getLinesPrinted() {
+        return linesPrinted;
+    }
+}
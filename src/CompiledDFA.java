@@ -0,0 +1,282 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+// Integer indexed form of a DFA. States and symbols are numbered densely and the
+// transitions live in one flat table so running input does not allocate.
+public class CompiledDFA implements DeterministicMatcher {
+
+    // Marks a missing transition in the table
+    public static final int DEAD = -1;
+
+    // Names are only needed for printing, so they can be looked up lazily
+    private final IntFunction<String> stateNames;
+    private final int numStates;
+    private final SymbolMap symbols;
+    private final int numSymbols;
+    // table[state * numSymbols + symbol] is the next state or DEAD
+    private final int[] table;
+    private final boolean[] accepting;
+    private final int initialState;
+    // sink[state] is true if every transition loops back to the state
+    private final boolean[] sink;
+    // Counts the states and transitions runs use, null except on a copy made by profiled
+    private final TransitionProfile profile;
+
+    public CompiledDFA(String[] stateNames, SymbolMap symbols, int[] table, boolean[] accepting, int initialState) {
+        this(s -> stateNames[s], stateNames.length, symbols, table, accepting, initialState);
+    }
+
+    public CompiledDFA(IntFunction<String> stateNames, int numStates, SymbolMap symbols, int[] table, boolean[] accepting, int initialState) {
+        this.stateNames = stateNames;
+        this.numStates = numStates;
+        this.symbols = symbols;
+        this.numSymbols = symbols.size();
+        this.table = table;
+        this.accepting = accepting;
+        this.initialState = initialState;
+        this.sink = findSinks();
+        this.profile = null;
+    }
+
+    // Shares every table of the original, only the profile is new
+    private CompiledDFA(CompiledDFA original) {
+        this.stateNames = original.stateNames;
+        this.numStates = original.numStates;
+        this.symbols = original.symbols;
+        this.numSymbols = original.numSymbols;
+        this.table = original.table;
+        this.accepting = original.accepting;
+        this.initialState = original.initialState;
+        this.sink = original.sink;
+        this.profile = new TransitionProfile(numStates, symbols, stateNames, s -> accepting[s], (s, a) -> {
+            int next = table[s * numSymbols + a];
+            return next == DEAD ? new int[0] : new int[] {next};
+        });
+    }
+
+    // A non-accepting state is also a sink if its only exits are missing transitions
+    private boolean[] findSinks() {
+        boolean[] sinks = new boolean[numStates];
+        for (int s = 0; s < numStates; s++) {
+            boolean loops = true;
+            for (int a = 0; a < numSymbols && loops; a++) {
+                int next = table[s * numSymbols + a];
+                loops = next == s || (next == DEAD && !accepting[s]);
+            }
+            sinks[s] = loops;
+        }
+        return sinks;
+    }
+
+    public static CompiledDFA compile(Automaton dfa) {
+        try (Metrics.Phase phase = Metrics.start("compile-dfa")) {
+            CompiledDFA compiled = compileTable(dfa);
+            phase.states(compiled.getNumStates()).transitions((long) compiled.getNumStates() * compiled.getSymbols().size());
+            return compiled;
+        }
+    }
+
+    private static CompiledDFA compileTable(Automaton dfa) {
+        SymbolMap symbols = new SymbolMap(dfa.getAlphabet());
+
+        // Number the states by name so the numbering is stable between runs
+        int[] sorted = dfa.getStatesSortedByName();
+        String[] stateNames = new String[sorted.length];
+        int[] rank = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            stateNames[i] = dfa.getStateName(sorted[i]);
+            rank[sorted[i]] = i;
+        }
+
+        int[] table = new int[stateNames.length * symbols.size()];
+        Arrays.fill(table, DEAD);
+        boolean[] accepting = new boolean[stateNames.length];
+        for (int s = 0; s < stateNames.length; s++) {
+            accepting[s] = dfa.isAccepting(sorted[s]);
+            for (int a = 0; a < symbols.size(); a++) {
+                int column = dfa.getSymbolIndex(symbols.getSymbol(a));
+                int count = dfa.getNumTargets(sorted[s], column);
+                if (count == 0) {
+                    continue;
+                }
+                if (count > 1) {
+                    throw new IllegalStateException("DFA can only have one nextState for a given input");
+                }
+                table[s * symbols.size() + a] = rank[dfa.getTarget(sorted[s], column, 0)];
+            }
+        }
+
+        int initial = dfa.getInitialStateIndex();
+        if (initial < 0) {
+            throw new IllegalArgumentException("Initial state is not one of the states: " + dfa.getInitialState());
+        }
+        return new CompiledDFA(stateNames, symbols, table, accepting, rank[initial]);
+    }
+
+    // Expands the table back into a DFA with named states. DFA cells hold exactly one state,
+    // so missing transitions go to an added "sink" state, as in the minimizer and products.
+    public DFA toDFA() {
+        String[] names = new String[numStates];
+        for (int s = 0; s < numStates; s++) {
+            names[s] = stateNames.apply(s);
+        }
+        Set<String> states = new LinkedHashSet<>(Arrays.asList(names));
+        String sinkName = null;
+        for (int next : table) {
+            if (next == DEAD) {
+                sinkName = "sink";
+                while (states.contains(sinkName)) {
+                    sinkName = "_" + sinkName;
+                }
+                break;
+            }
+        }
+        Set<String> alphabet = new LinkedHashSet<>(symbols.getSymbols());
+        Set<String> acceptStates = new HashSet<>();
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+        for (int s = 0; s < numStates; s++) {
+            if (accepting[s]) {
+                acceptStates.add(names[s]);
+            }
+            Map<String, Set<String>> stateTransitions = new HashMap<>();
+            for (int a = 0; a < numSymbols; a++) {
+                int next = table[s * numSymbols + a];
+                stateTransitions.put(symbols.getSymbol(a), Set.of(next == DEAD ? sinkName : names[next]));
+            }
+            transitions.put(names[s], stateTransitions);
+        }
+        if (sinkName != null) {
+            states.add(sinkName);
+            Map<String, Set<String>> sinkTransitions = new HashMap<>();
+            for (int a = 0; a < numSymbols; a++) {
+                sinkTransitions.put(symbols.getSymbol(a), Set.of(sinkName));
+            }
+            transitions.put(sinkName, sinkTransitions);
+        }
+        return new DFA(states, alphabet, names[initialState], acceptStates, transitions);
+    }
+
+    public boolean run(String inputString) {
+        long[] counts = profile == null ? null : profile.stripe();
+        int width = numSymbols + 1;
+        int state = initialState;
+        for (int i = 0; i < inputString.length(); i++) {
+            char c = inputString.charAt(i);
+            int symbol = symbols.indexOf(c);
+            int next = symbol < 0 ? DEAD : table[state * numSymbols + symbol];
+            if (counts != null) {
+                counts[state * width + numSymbols]++;
+                if (symbol >= 0) {
+                    counts[state * width + symbol]++;
+                }
+            }
+            if (next == DEAD) {
+                System.out.println("No transition defined for state: " + stateNames.apply(state) + " with input: " + c);
+                return false;
+            }
+            state = next;
+        }
+        if (counts != null) {
+            counts[state * width + numSymbols]++;
+        }
+        return accepting[state];
+    }
+
+    // Same as run but without printing, safe to call from several threads at once
+    public boolean accepts(String inputString) {
+        if (profile != null) {
+            return acceptsProfiled(inputString);
+        }
+        int state = initialState;
+        for (int i = 0; i < inputString.length(); i++) {
+            int symbol = symbols.indexOf(inputString.charAt(i));
+            if (symbol < 0) {
+                return false;
+            }
+            state = table[state * numSymbols + symbol];
+            if (state == DEAD) {
+                return false;
+            }
+        }
+        return accepting[state];
+    }
+
+    // Kept apart from accepts so the loop that is not profiled has no extra branch
+    private boolean acceptsProfiled(String inputString) {
+        long[] counts = profile.stripe();
+        int width = numSymbols + 1;
+        int state = initialState;
+        for (int i = 0; i < inputString.length(); i++) {
+            counts[state * width + numSymbols]++;
+            int symbol = symbols.indexOf(inputString.charAt(i));
+            if (symbol < 0) {
+                return false;
+            }
+            counts[state * width + symbol]++;
+            state = table[state * numSymbols + symbol];
+            if (state == DEAD) {
+                return false;
+            }
+        }
+        counts[state * width + numSymbols]++;
+        return accepting[state];
+    }
+
+    // A copy that counts what run and accepts use in its getProfile. The copy shares the
+    // tables, and this DFA, which may be shared through the cache, is left as it was.
+    public CompiledDFA profiled() {
+        return new CompiledDFA(this);
+    }
+
+    // The counts of a copy made by profiled, otherwise null
+    public TransitionProfile getProfile() {
+        return profile;
+    }
+
+    // Next state for a symbol index, or DEAD
+    @Override
+    public int step(int state, int symbol) {
+        return table[state * numSymbols + symbol];
+    }
+
+    public int getInitialState() {
+        return initialState;
+    }
+
+    @Override
+    public int getStartState() {
+        return initialState;
+    }
+
+    @Override
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    @Override
+    public boolean isSink(int state) {
+        return sink[state];
+    }
+
+    public int getNumStates() {
+        return numStates;
+    }
+
+    // Approximate heap footprint in bytes, counting about 64 bytes for each state name
+    public long estimateSize() {
+        return 4L * table.length + 66L * numStates + 64L;
+    }
+
+    public String getStateName(int state) {
+        return stateNames.apply(state);
+    }
+
+    @Override
+    public SymbolMap getSymbols() {
+        return symbols;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Binary form of a CompiledDFA so large automata can be loaded without parsing text.
+// Layout, all little endian:
+//   header (64 bytes): magic, version, states, symbols, initial state, flags,
+//                      then the offsets of the table, accept, symbol and name sections,
+//                      then a stamp of the text file it was compiled from, or 0
+//   table:   states * symbols ints, DEAD for a missing transition
+//   accept:  one bit per state packed into longs
+//   symbols: count, then length prefixed UTF-8 strings
+//   names:   states + 1 int offsets into the UTF-8 blob that follows them
+public class CompiledDFAFile {
+
+    public static final int MAGIC = 0x41464443; // "CDFA"
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+
+    // Flag set when the DFA was determinized from an NFA, which rejects a missing
+    // transition quietly instead of reporting it
+    public static final int FROM_NFA = 1;
+
+    public static boolean isCompiledFile(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return Integer.reverseBytes(in.readInt()) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void write(CompiledDFA dfa, String filename) throws IOException {
+        write(dfa, filename, 0L, 0);
+    }
+
+    // Stamp of the source file the DFA was compiled from, 0 if there is none or the file is not compiled
+    public static long readSourceStamp(String filename) {
+        ByteBuffer header = readHeader(filename);
+        return header == null ? 0L : header.getLong(56);
+    }
+
+    // Flags of a compiled file, 0 if it is not one
+    public static int readFlags(String filename) {
+        ByteBuffer header = readHeader(filename);
+        return header == null ? 0 : header.getInt(20);
+    }
+
+    private static ByteBuffer readHeader(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            byte[] header = new byte[HEADER_BYTES];
+            in.readFully(header);
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            return buffer.getInt(0) == MAGIC ? buffer : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Written to a temporary file next to the target and then moved over it, so a reader
+    // never sees a partly written file, even after a crash or with several writers
+    public static void write(CompiledDFA dfa, String filename, long sourceStamp, int flags) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        // Named by process and thread rather than with createTempFile, which would make the file private
+        Path temp = target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid()
+                + "-" + Thread.currentThread().getId() + ".tmp");
+        try {
+            writeTo(dfa, temp, sourceStamp, flags);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeTo(CompiledDFA dfa, Path path, long sourceStamp, int flags) throws IOException {
+        int numStates = dfa.getNumStates();
+        SymbolMap symbols = dfa.getSymbols();
+        int numSymbols = symbols.size();
+
+        byte[][] symbolBytes = new byte[numSymbols][];
+        long symbolsLength = 4;
+        for (int a = 0; a < numSymbols; a++) {
+            symbolBytes[a] = symbols.getSymbol(a).getBytes(StandardCharsets.UTF_8);
+            symbolsLength += 4 + symbolBytes[a].length;
+        }
+        byte[][] nameBytes = new byte[numStates][];
+        long blobLength = 0;
+        for (int s = 0; s < numStates; s++) {
+            nameBytes[s] = dfa.getStateName(s).getBytes(StandardCharsets.UTF_8);
+            blobLength += nameBytes[s].length;
+        }
+        if (blobLength > Integer.MAX_VALUE) {
+            throw new IOException("State names are too large to store");
+        }
+
+        long tableOffset = HEADER_BYTES;
+        long acceptOffset = tableOffset + 4L * numStates * numSymbols;
+        long symbolsOffset = acceptOffset + 8L * ((numStates + 63) >>> 6);
+        long namesOffset = symbolsOffset + symbolsLength;
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(numStates).putInt(numSymbols);
+            buffer.putInt(dfa.getStartState()).putInt(flags);
+            buffer.putLong(tableOffset).putLong(acceptOffset).putLong(symbolsOffset).putLong(namesOffset);
+            buffer.putLong(sourceStamp);
+
+            for (int s = 0; s < numStates; s++) {
+                for (int a = 0; a < numSymbols; a++) {
+                    ensure(channel, buffer, 4);
+                    buffer.putInt(dfa.step(s, a));
+                }
+            }
+            for (int w = 0; w < (numStates + 63) >>> 6; w++) {
+                long bits = 0;
+                for (int s = w << 6; s < Math.min(numStates, (w + 1) << 6); s++) {
+                    if (dfa.isAccepting(s)) {
+                        bits |= 1L << (s & 63);
+                    }
+                }
+                ensure(channel, buffer, 8);
+                buffer.putLong(bits);
+            }
+            ensure(channel, buffer, 4);
+            buffer.putInt(numSymbols);
+            for (byte[] bytes : symbolBytes) {
+                ensure(channel, buffer, 4);
+                buffer.putInt(bytes.length);
+                putBytes(channel, buffer, bytes);
+            }
+            int offset = 0;
+            for (int s = 0; s <= numStates; s++) {
+                ensure(channel, buffer, 4);
+                buffer.putInt(offset);
+                if (s < numStates) {
+                    offset += nameBytes[s].length;
+                }
+            }
+            for (byte[] bytes : nameBytes) {
+                putBytes(channel, buffer, bytes);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    // Maps the file once and checks every section against the file size before reading
+    // it, so a damaged file fails here with an IOException rather than later in a run.
+    // The table is copied out while its entries are checked, since that pass touches
+    // every entry anyway and runs index a plain array faster than a buffer view. Names
+    // stay in the mapping and are only decoded when something asks for them.
+    public static CompiledDFA load(String filename) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Compiled DFA file is too large to map: " + filename);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        long size = map.capacity();
+        if (size < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled DFA file: " + filename);
+        }
+        if (map.getInt(4) != VERSION) {
+            throw new IOException("Unsupported compiled DFA version: " + map.getInt(4));
+        }
+        int numStates = map.getInt(8);
+        int numSymbols = map.getInt(12);
+        int initialState = map.getInt(16);
+        long tableOffset = map.getLong(24);
+        long acceptOffset = map.getLong(32);
+        long symbolsOffset = map.getLong(40);
+        long namesOffset = map.getLong(48);
+        if (numStates < 1 || numSymbols < 0) {
+            throw corrupt(filename, "it has " + numStates + " states and " + numSymbols + " symbols");
+        }
+        if (initialState < 0 || initialState >= numStates) {
+            throw corrupt(filename, "the initial state " + initialState + " is out of range");
+        }
+        long tableLength = 4L * numStates * numSymbols;
+        checkSection(filename, "table", tableOffset, tableLength, size);
+        checkSection(filename, "accept", acceptOffset, 8L * ((numStates + 63L) >>> 6), size);
+        checkSection(filename, "symbol", symbolsOffset, 4, size);
+        checkSection(filename, "name", namesOffset, 4L * (numStates + 1L), size);
+
+        int[] table = new int[numStates * numSymbols];
+        map.slice((int) tableOffset, (int) tableLength).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(table);
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != CompiledDFA.DEAD && (table[i] < 0 || table[i] >= numStates)) {
+                throw corrupt(filename, "state " + (i / numSymbols) + " has a transition to " + table[i]);
+            }
+        }
+
+        boolean[] accepting = new boolean[numStates];
+        for (int s = 0; s < numStates; s++) {
+            long bits = map.getLong((int) acceptOffset + 8 * (s >>> 6));
+            accepting[s] = (bits & (1L << (s & 63))) != 0;
+        }
+
+        if (map.getInt((int) symbolsOffset) != numSymbols) {
+            throw corrupt(filename, "the symbol count does not match the header");
+        }
+        List<String> symbolList = new ArrayList<>(numSymbols);
+        long pos = symbolsOffset + 4;
+        for (int a = 0; a < numSymbols; a++) {
+            checkSection(filename, "symbol", pos, 4, size);
+            int length = map.getInt((int) pos);
+            checkSection(filename, "symbol", pos + 4, length, size);
+            symbolList.add(decode(map, (int) pos + 4, length));
+            pos += 4 + length;
+        }
+        SymbolMap symbols = new SymbolMap(symbolList);
+        // The table columns were written in SymbolMap order, so a rebuilt map must agree
+        if (symbols.size() != numSymbols) {
+            throw corrupt(filename, "a symbol appears twice");
+        }
+        for (int a = 0; a < numSymbols; a++) {
+            if (!symbols.getSymbol(a).equals(symbolList.get(a))) {
+                throw new IOException("Compiled DFA symbols are out of order: " + filename);
+            }
+        }
+
+        // Name offsets must rise through a blob that ends inside the file
+        long blobOffset = namesOffset + 4L * (numStates + 1L);
+        int previous = 0;
+        for (int s = 0; s <= numStates; s++) {
+            int offset = map.getInt((int) namesOffset + 4 * s);
+            if (offset < previous || (s == 0 && offset != 0)) {
+                throw corrupt(filename, "the name offsets are out of order");
+            }
+            previous = offset;
+        }
+        checkSection(filename, "name", blobOffset, previous, size);
+
+        int blob = (int) blobOffset;
+        int names = (int) namesOffset;
+        String[] decoded = new String[numStates];
+        return new CompiledDFA(s -> {
+            String name = decoded[s];
+            if (name == null) {
+                int start = map.getInt(names + 4 * s);
+                int end = map.getInt(names + 4 * (s + 1));
+                name = decode(map, blob + start, end - start);
+                decoded[s] = name;
+            }
+            return name;
+        }, numStates, symbols, table, accepting, initialState);
+    }
+
+    private static void checkSection(String filename, String section, long offset, long length, long size) throws IOException {
+        if (offset < HEADER_BYTES || length < 0 || offset + length > size) {
+            throw corrupt(filename, "the " + section + " section lies outside the file");
+        }
+    }
+
+    private static IOException corrupt(String filename, String reason) {
+        return new IOException("Corrupt compiled DFA file " + filename + ": " + reason);
+    }
+
+    private static String decode(ByteBuffer map, int offset, int length) {
+        byte[] bytes = new byte[length];
+        map.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        int pos = 0;
+        while (pos < bytes.length) {
+            ensure(channel, buffer, 1);
+            int n = Math.min(buffer.remaining(), bytes.length - pos);
+            buffer.put(bytes, pos, n);
+            pos += n;
+        }
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Integer indexed form of an NFA or epsilon-NFA. The active states are kept as a
+// long[] bitset and each step ORs in precomputed successor masks. NFAs too wide
+// for dense masks fall back to successor lists and a sparse state set. Epsilon
+// closures are folded into the successors when the automaton is compiled, so
+// the active set is always closed and running never walks epsilon edges.
+public class CompiledNFA {
+
+    // Upper bound on the longs held by the dense successor masks
+    public static final long DENSE_MASK_BUDGET = 1L << 22;
+
+    private final String[] stateNames;
+    private final SymbolMap symbols;
+    private final int numStates;
+    private final int words;
+    private final int initialState;
+    private final boolean[] accepting;
+    private final long[] acceptMask;
+    // Epsilon closures of each state, null when there are no epsilon transitions
+    private final EpsilonClosureTable closures;
+    // successors[symbol][state] lists the states reached on that symbol, closed under epsilon
+    private final int[][][] successors;
+    // masks[symbol][state * words + w] holds the same sets as bitsets, null when sparse
+    private final long[][] masks;
+    // Counts the states and transitions runs use, null except on a copy made by profiled
+    private final TransitionProfile profile;
+
+    public static CompiledNFA compile(Automaton nfa) {
+        try (Metrics.Phase phase = Metrics.start("compile-nfa")) {
+            return new CompiledNFA(nfa, phase);
+        }
+    }
+
+    private CompiledNFA(Automaton nfa, Metrics.Phase phase) {
+        symbols = new SymbolMap(nfa.getAlphabet());
+
+        // Number the states by name, rank[s] is the number of the automaton's state s
+        int[] sorted = nfa.getStatesSortedByName();
+        numStates = sorted.length;
+        words = Math.max(1, (numStates + 63) >>> 6);
+        stateNames = new String[numStates];
+        int[] rank = new int[numStates];
+        for (int i = 0; i < numStates; i++) {
+            stateNames[i] = nfa.getStateName(sorted[i]);
+            rank[sorted[i]] = i;
+        }
+
+        int initial = nfa.getInitialStateIndex();
+        if (initial < 0) {
+            throw new IllegalArgumentException("Initial state is not one of the states: " + nfa.getInitialState());
+        }
+        initialState = rank[initial];
+
+        accepting = new boolean[numStates];
+        acceptMask = new long[words];
+        for (int s = 0; s < numStates; s++) {
+            if (nfa.isAccepting(sorted[s])) {
+                accepting[s] = true;
+                acceptMask[s >>> 6] |= 1L << s;
+            }
+        }
+
+        closures = buildClosures(nfa, sorted, rank);
+
+        successors = new int[symbols.size()][numStates][];
+        long transitions = 0;
+        SparseStateSet scratch = new SparseStateSet(numStates);
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < symbols.size(); a++) {
+                int column = nfa.getSymbolIndex(symbols.getSymbol(a));
+                int count = nfa.getNumTargets(sorted[s], column);
+                if (count == 0) {
+                    successors[a][s] = new int[0];
+                    continue;
+                }
+                // Close each destination under epsilon here, once, instead of while running
+                scratch.clear();
+                for (int i = 0; i < count; i++) {
+                    int d = rank[nfa.getTarget(sorted[s], column, i)];
+                    if (closures != null) {
+                        closures.addTo(d, scratch);
+                    } else {
+                        scratch.add(d);
+                    }
+                }
+                int[] list = new int[scratch.size()];
+                for (int i = 0; i < list.length; i++) {
+                    list[i] = scratch.get(i);
+                }
+                Arrays.sort(list);
+                successors[a][s] = list;
+                transitions += list.length;
+            }
+        }
+
+        // Only build the dense masks if they fit in the budget
+        if ((long) symbols.size() * numStates * words <= DENSE_MASK_BUDGET) {
+            masks = new long[symbols.size()][numStates * words];
+            for (int a = 0; a < symbols.size(); a++) {
+                for (int s = 0; s < numStates; s++) {
+                    for (int d : successors[a][s]) {
+                        masks[a][s * words + (d >>> 6)] |= 1L << d;
+                    }
+                }
+            }
+        } else {
+            masks = null;
+        }
+        profile = null;
+        phase.states(numStates).transitions(transitions);
+    }
+
+    // Shares every table of the original, only the profile is new
+    private CompiledNFA(CompiledNFA original) {
+        stateNames = original.stateNames;
+        symbols = original.symbols;
+        numStates = original.numStates;
+        words = original.words;
+        initialState = original.initialState;
+        accepting = original.accepting;
+        acceptMask = original.acceptMask;
+        closures = original.closures;
+        successors = original.successors;
+        masks = original.masks;
+        profile = new TransitionProfile(numStates, symbols, s -> stateNames[s], s -> accepting[s], (s, a) -> successors[a][s]);
+    }
+
+    private EpsilonClosureTable buildClosures(Automaton nfa, int[] sorted, int[] rank) {
+        if (!nfa.hasEpsilonTransitions()) {
+            return null;
+        }
+        int[][] epsilon = new int[numStates][];
+        for (int s = 0; s < numStates; s++) {
+            epsilon[s] = new int[nfa.getNumEpsilonTargets(sorted[s])];
+            for (int i = 0; i < epsilon[s].length; i++) {
+                epsilon[s][i] = rank[nfa.getEpsilonTarget(sorted[s], i)];
+            }
+        }
+        return new EpsilonClosureTable(numStates, epsilon);
+    }
+
+    public boolean run(String inputString) {
+        if (profile != null) {
+            return runProfiled(inputString);
+        }
+        return masks != null ? runDense(inputString) : runSparse(inputString);
+    }
+
+    // Like runSparse, counting a visit to every active state at every position and the
+    // transition each one takes
+    private boolean runProfiled(String inputString) {
+        long[] counts = profile.stripe();
+        int width = symbols.size() + 1;
+        SparseStateSet current = new SparseStateSet(numStates);
+        SparseStateSet next = new SparseStateSet(numStates);
+        if (closures != null) {
+            closures.addTo(initialState, current);
+        } else {
+            current.add(initialState);
+        }
+        for (int i = 0; i < inputString.length(); i++) {
+            int symbol = symbols.indexOf(inputString.charAt(i));
+            next.clear();
+            for (int j = 0; j < current.size(); j++) {
+                int s = current.get(j);
+                counts[s * width + width - 1]++;
+                if (symbol >= 0) {
+                    counts[s * width + symbol]++;
+                    for (int d : successors[symbol][s]) {
+                        next.add(d);
+                    }
+                }
+            }
+            if (next.isEmpty()) {
+                return false;
+            }
+            SparseStateSet swap = current;
+            current = next;
+            next = swap;
+        }
+        boolean accepted = false;
+        for (int j = 0; j < current.size(); j++) {
+            counts[current.get(j) * width + width - 1]++;
+            accepted |= accepting[current.get(j)];
+        }
+        return accepted;
+    }
+
+    // A copy that counts what run uses in its getProfile. The copy shares the tables, and
+    // this NFA is left as it was.
+    public CompiledNFA profiled() {
+        return new CompiledNFA(this);
+    }
+
+    // The counts of a copy made by profiled, otherwise null
+    public TransitionProfile getProfile() {
+        return profile;
+    }
+
+    private boolean runDense(String inputString) {
+        boolean tracking = Metrics.isEnabled();
+        long[] current = initialSet();
+        long[] next = new long[words];
+        for (int i = 0; i < inputString.length(); i++) {
+            if (tracking) {
+                Metrics.recordActiveSet(cardinality(current));
+            }
+            int symbol = symbols.indexOf(inputString.charAt(i));
+            if (symbol < 0) {
+                return false;
+            }
+            if (!step(current, symbol, next)) {
+                return false;
+            }
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        if (tracking) {
+            Metrics.recordActiveSet(cardinality(current));
+        }
+        return isAccepting(current);
+    }
+
+    private static int cardinality(long[] set) {
+        int count = 0;
+        for (long bits : set) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    private boolean runSparse(String inputString) {
+        boolean tracking = Metrics.isEnabled();
+        SparseStateSet current = new SparseStateSet(numStates);
+        SparseStateSet next = new SparseStateSet(numStates);
+        if (closures != null) {
+            closures.addTo(initialState, current);
+        } else {
+            current.add(initialState);
+        }
+        for (int i = 0; i < inputString.length(); i++) {
+            if (tracking) {
+                Metrics.recordActiveSet(current.size());
+            }
+            int symbol = symbols.indexOf(inputString.charAt(i));
+            if (symbol < 0) {
+                return false;
+            }
+            next.clear();
+            int[][] bySymbol = successors[symbol];
+            for (int j = 0; j < current.size(); j++) {
+                for (int d : bySymbol[current.get(j)]) {
+                    next.add(d);
+                }
+            }
+            if (next.isEmpty()) {
+                return false;
+            }
+            SparseStateSet swap = current;
+            current = next;
+            next = swap;
+        }
+        if (tracking) {
+            Metrics.recordActiveSet(current.size());
+        }
+        for (int j = 0; j < current.size(); j++) {
+            if (accepting[current.get(j)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Bitset holding the initial state and its epsilon closure
+    public long[] initialSet() {
+        long[] set = new long[words];
+        if (closures != null) {
+            closures.addTo(initialState, set);
+        } else {
+            set[initialState >>> 6] |= 1L << initialState;
+        }
+        return set;
+    }
+
+    // Writes the successors of current on symbol into next. Returns false if next is empty.
+    public boolean step(long[] current, int symbol, long[] next) {
+        Arrays.fill(next, 0L);
+        long any = 0L;
+        if (masks != null) {
+            long[] bySymbol = masks[symbol];
+            for (int w = 0; w < words; w++) {
+                long bits = current[w];
+                while (bits != 0) {
+                    int row = ((w << 6) + Long.numberOfTrailingZeros(bits)) * words;
+                    for (int k = 0; k < words; k++) {
+                        next[k] |= bySymbol[row + k];
+                    }
+                    bits &= bits - 1;
+                }
+            }
+            for (int k = 0; k < words; k++) {
+                any |= next[k];
+            }
+        } else {
+            int[][] bySymbol = successors[symbol];
+            for (int w = 0; w < words; w++) {
+                long bits = current[w];
+                while (bits != 0) {
+                    int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    for (int d : bySymbol[s]) {
+                        next[d >>> 6] |= 1L << d;
+                        any = 1L;
+                    }
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return any != 0L;
+    }
+
+    public boolean isAccepting(long[] set) {
+        for (int w = 0; w < words; w++) {
+            if ((set[w] & acceptMask[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getNumStates() {
+        return numStates;
+    }
+
+    // Number of longs in a state set bitset
+    public int getWords() {
+        return words;
+    }
+
+    public String getStateName(int state) {
+        return stateNames[state];
+    }
+
+    public boolean isAcceptingState(int state) {
+        return accepting[state];
+    }
+
+    public SymbolMap getSymbols() {
+        return symbols;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Hopcroft's partition refinement. Unreachable states are dropped first, missing
+// transitions go to an added sink state, and the remaining states are split until
+// every block holds only equivalent states. Runs in O(n k log n) for n states and
+// k symbols.
+public class DFAMinimizer {
+
+    public static CompiledDFA minimize(CompiledDFA dfa) {
+        try (Metrics.Phase phase = Metrics.start("minimize")) {
+            CompiledDFA minimal = refine(dfa);
+            phase.states(minimal.getNumStates()).transitions((long) minimal.getNumStates() * minimal.getSymbols().size());
+            return minimal;
+        }
+    }
+
+    private static CompiledDFA refine(CompiledDFA dfa) {
+        int k = dfa.getSymbols().size();
+
+        // Collect the reachable states, with one extra index for the sink if a transition is missing
+        int sink = dfa.getNumStates();
+        int[] order = new int[dfa.getNumStates() + 1];
+        int[] newIndex = new int[dfa.getNumStates() + 1];
+        Arrays.fill(newIndex, -1);
+        int n = 0;
+        order[n] = dfa.getInitialState();
+        newIndex[dfa.getInitialState()] = n++;
+        for (int head = 0; head < n; head++) {
+            int s = order[head];
+            for (int a = 0; a < k; a++) {
+                int t = s == sink ? sink : dfa.step(s, a);
+                if (t == CompiledDFA.DEAD) {
+                    t = sink;
+                }
+                if (newIndex[t] == -1) {
+                    newIndex[t] = n;
+                    order[n++] = t;
+                }
+            }
+        }
+
+        // Complete table over the reachable states
+        int[] table = new int[n * k];
+        boolean[] accepting = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            int s = order[i];
+            accepting[i] = s != sink && dfa.isAccepting(s);
+            for (int a = 0; a < k; a++) {
+                int t = s == sink ? sink : dfa.step(s, a);
+                table[i * k + a] = newIndex[t == CompiledDFA.DEAD ? sink : t];
+            }
+        }
+
+        int[] block = refine(n, k, table, accepting);
+
+        // Number the blocks in breadth-first order from the initial block
+        int blockCount = 0;
+        for (int b : block) {
+            blockCount = Math.max(blockCount, b + 1);
+        }
+        int[] blockIndex = new int[blockCount];
+        Arrays.fill(blockIndex, -1);
+        int[] representative = new int[blockCount];
+        int count = 0;
+        blockIndex[block[0]] = count;
+        representative[count++] = 0;
+        for (int head = 0; head < count; head++) {
+            int s = representative[head];
+            for (int a = 0; a < k; a++) {
+                int b = block[table[s * k + a]];
+                if (blockIndex[b] == -1) {
+                    blockIndex[b] = count;
+                    representative[count++] = table[s * k + a];
+                }
+            }
+        }
+
+        // Name each block after its smallest original member, falling back to "sink"
+        String[] names = new String[count];
+        for (int i = 0; i < n; i++) {
+            if (order[i] == sink) {
+                continue;
+            }
+            int b = blockIndex[block[i]];
+            String name = dfa.getStateName(order[i]);
+            if (names[b] == null || name.compareTo(names[b]) < 0) {
+                names[b] = name;
+            }
+        }
+        Set<String> used = new HashSet<>(Arrays.asList(names));
+        for (int b = 0; b < count; b++) {
+            if (names[b] == null) {
+                String name = "sink";
+                while (used.contains(name)) {
+                    name = "_" + name;
+                }
+                used.add(name);
+                names[b] = name;
+            }
+        }
+
+        int[] minTable = new int[count * k];
+        boolean[] minAccepting = new boolean[count];
+        for (int b = 0; b < count; b++) {
+            int s = representative[b];
+            minAccepting[b] = accepting[s];
+            for (int a = 0; a < k; a++) {
+                minTable[b * k + a] = blockIndex[block[table[s * k + a]]];
+            }
+        }
+        return new CompiledDFA(names, dfa.getSymbols(), minTable, minAccepting, 0);
+    }
+
+    // Returns the block of each state once no block can be split further
+    private static int[] refine(int n, int k, int[] table, boolean[] accepting) {
+        // Predecessor lists per symbol: preds[a][predStart[a][t] .. predStart[a][t + 1]) reach t on a
+        int[][] predStart = new int[k][n + 1];
+        int[][] preds = new int[k][n];
+        for (int a = 0; a < k; a++) {
+            for (int s = 0; s < n; s++) {
+                predStart[a][table[s * k + a] + 1]++;
+            }
+            for (int t = 0; t < n; t++) {
+                predStart[a][t + 1] += predStart[a][t];
+            }
+            int[] fill = Arrays.copyOf(predStart[a], n);
+            for (int s = 0; s < n; s++) {
+                preds[a][fill[table[s * k + a]]++] = s;
+            }
+        }
+
+        // Blocks are ranges of elems, first[b] .. end[b]
+        int[] elems = new int[n];
+        int[] location = new int[n];
+        int[] blockOf = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] marked = new int[n];
+        int blocks = 0;
+
+        int pos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int start = pos;
+            for (int s = 0; s < n; s++) {
+                if (accepting[s] == (pass == 0)) {
+                    elems[pos] = s;
+                    location[s] = pos++;
+                    blockOf[s] = blocks;
+                }
+            }
+            if (pos > start) {
+                first[blocks] = start;
+                end[blocks] = pos;
+                blocks++;
+            }
+        }
+
+        // Worklist of splitters (block, symbol), starting with the smaller initial block
+        Deque<int[]> work = new ArrayDeque<>();
+        boolean[] inWork = new boolean[n * k];
+        int smallest = 0;
+        if (blocks == 2 && end[1] - first[1] < end[0] - first[0]) {
+            smallest = 1;
+        }
+        for (int a = 0; a < k; a++) {
+            work.add(new int[] {smallest, a});
+            inWork[smallest * k + a] = true;
+        }
+
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (!work.isEmpty()) {
+            int[] pair = work.poll();
+            int c = pair[0];
+            int a = pair[1];
+            inWork[c * k + a] = false;
+
+            // Copy the splitter first since marking can reorder its own range
+            int size = end[c] - first[c];
+            System.arraycopy(elems, first[c], splitter, 0, size);
+
+            int touchedCount = 0;
+            for (int i = 0; i < size; i++) {
+                int t = splitter[i];
+                for (int j = predStart[a][t]; j < predStart[a][t + 1]; j++) {
+                    int p = preds[a][j];
+                    int b = blockOf[p];
+                    int boundary = first[b] + marked[b];
+                    if (location[p] < boundary) {
+                        continue;
+                    }
+                    if (marked[b] == 0) {
+                        touched[touchedCount++] = b;
+                    }
+                    // Swap p into the marked prefix of its block
+                    int other = elems[boundary];
+                    elems[boundary] = p;
+                    elems[location[p]] = other;
+                    location[other] = location[p];
+                    location[p] = boundary;
+                    marked[b]++;
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                int b = touched[i];
+                int markedCount = marked[b];
+                marked[b] = 0;
+                if (markedCount == end[b] - first[b]) {
+                    continue;
+                }
+                // Split the marked prefix off into a new block
+                int nb = blocks++;
+                first[nb] = first[b];
+                end[nb] = first[b] + markedCount;
+                first[b] = end[nb];
+                for (int j = first[nb]; j < end[nb]; j++) {
+                    blockOf[elems[j]] = nb;
+                }
+                for (int x = 0; x < k; x++) {
+                    if (inWork[b * k + x]) {
+                        work.add(new int[] {nb, x});
+                        inWork[nb * k + x] = true;
+                    } else {
+                        int add = end[nb] - first[nb] <= end[b] - first[b] ? nb : b;
+                        work.add(new int[] {add, x});
+                        inWork[add * k + x] = true;
+                    }
+                }
+            }
+        }
+        return blockOf;
+    }
+}
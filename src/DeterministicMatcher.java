@@ -0,0 +1,22 @@
+/*
+ * Elliot Maringer
+ */
+
+// A deterministic automaton over integer states and symbol indices. Implemented
+// by the compiled DFA and the lazily determinized DFA so input can be streamed
+// through either one a symbol at a time.
+public interface DeterministicMatcher {
+
+    SymbolMap getSymbols();
+
+    int getStartState();
+
+    // Next state on a symbol index. A negative result means there is no transition.
+    int step(int state, int symbol);
+
+    boolean isAccepting(int state);
+
+    // True if no further input over the alphabet can leave the state, so the
+    // result is already decided once it is reached
+    boolean isSink(int state);
+}
@@ -0,0 +1,186 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Epsilon closure of every state, computed once. The epsilon graph is condensed
+// into strongly connected components so each component's closure is built a
+// single time from the closures of the components it reaches. States in the
+// same component share one row.
+public class EpsilonClosureTable {
+
+    // Upper bound on the longs held by the closure bitsets
+    public static final long DENSE_ROW_BUDGET = 1L << 22;
+
+    private final int words;
+    // component[state] is the strongly connected component holding that state
+    private final int[] component;
+    // rows[component] is the closure as a bitset, null when the table is sparse
+    private final long[][] rows;
+    // lists[component] is the closure as sorted state indices, null when the table is dense
+    private final int[][] lists;
+
+    public EpsilonClosureTable(int numStates, int[][] epsilon) {
+        words = Math.max(1, (numStates + 63) >>> 6);
+        component = new int[numStates];
+        List<int[]> components = findComponents(numStates, epsilon);
+
+        // Tarjan's algorithm emits components in reverse topological order, so every
+        // component a component can reach has already been closed when it is visited
+        int count = components.size();
+        long merges = 0;
+        if ((long) count * words <= DENSE_ROW_BUDGET) {
+            rows = new long[count][];
+            lists = null;
+            for (int c = 0; c < count; c++) {
+                long[] row = new long[words];
+                for (int s : components.get(c)) {
+                    row[s >>> 6] |= 1L << s;
+                    for (int d : epsilon[s]) {
+                        int dc = component[d];
+                        if (dc != c) {
+                            merges++;
+                            long[] other = rows[dc];
+                            for (int w = 0; w < words; w++) {
+                                row[w] |= other[w];
+                            }
+                        }
+                    }
+                }
+                rows[c] = row;
+            }
+        } else {
+            rows = null;
+            lists = new int[count][];
+            SparseStateSet scratch = new SparseStateSet(numStates);
+            for (int c = 0; c < count; c++) {
+                scratch.clear();
+                for (int s : components.get(c)) {
+                    scratch.add(s);
+                    for (int d : epsilon[s]) {
+                        int dc = component[d];
+                        if (dc != c) {
+                            merges++;
+                            for (int r : lists[dc]) {
+                                scratch.add(r);
+                            }
+                        }
+                    }
+                }
+                int[] list = new int[scratch.size()];
+                for (int i = 0; i < list.length; i++) {
+                    list[i] = scratch.get(i);
+                }
+                Arrays.sort(list);
+                lists[c] = list;
+            }
+        }
+        Metrics.addClosureIterations(merges);
+    }
+
+    // Iterative Tarjan so long epsilon chains do not overflow the call stack
+    private List<int[]> findComponents(int numStates, int[][] epsilon) {
+        List<int[]> components = new ArrayList<>();
+        int[] index = new int[numStates];
+        int[] lowLink = new int[numStates];
+        boolean[] onStack = new boolean[numStates];
+        Arrays.fill(index, -1);
+        int[] stack = new int[numStates];
+        int stackSize = 0;
+        int[] callState = new int[numStates];
+        int[] callEdge = new int[numStates];
+        int nextIndex = 0;
+
+        for (int root = 0; root < numStates; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callState[0] = root;
+            callEdge[0] = 0;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int s = callState[depth];
+                if (callEdge[depth] < epsilon[s].length) {
+                    int d = epsilon[s][callEdge[depth]++];
+                    if (index[d] == -1) {
+                        // Descend into an unvisited state
+                        index[d] = lowLink[d] = nextIndex++;
+                        stack[stackSize++] = d;
+                        onStack[d] = true;
+                        depth++;
+                        callState[depth] = d;
+                        callEdge[depth] = 0;
+                    } else if (onStack[d]) {
+                        lowLink[s] = Math.min(lowLink[s], index[d]);
+                    }
+                    continue;
+                }
+
+                // All edges of s are done, pop s off the call stack
+                if (lowLink[s] == index[s]) {
+                    int c = components.size();
+                    int start = stackSize;
+                    do {
+                        start--;
+                    } while (stack[start] != s);
+                    int[] members = Arrays.copyOfRange(stack, start, stackSize);
+                    for (int m : members) {
+                        onStack[m] = false;
+                        component[m] = c;
+                    }
+                    stackSize = start;
+                    components.add(members);
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callState[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[s]);
+                }
+            }
+        }
+        return components;
+    }
+
+    // ORs the closure of state into a bitset
+    public void addTo(int state, long[] set) {
+        int c = component[state];
+        if (rows != null) {
+            long[] row = rows[c];
+            for (int w = 0; w < words; w++) {
+                set[w] |= row[w];
+            }
+        } else {
+            for (int s : lists[c]) {
+                set[s >>> 6] |= 1L << s;
+            }
+        }
+    }
+
+    // Adds the closure of state to a sparse set
+    public void addTo(int state, SparseStateSet set) {
+        int c = component[state];
+        if (rows != null) {
+            long[] row = rows[c];
+            for (int w = 0; w < words; w++) {
+                long bits = row[w];
+                while (bits != 0) {
+                    set.add((w << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        } else {
+            for (int s : lists[c]) {
+                set.add(s);
+            }
+        }
+    }
+
+    public int getComponentCount() {
+        return rows != null ? rows.length : lists.length;
+    }
+}
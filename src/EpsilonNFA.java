@@ -5,10 +5,18 @@
  import java.util.*;
 
 public class EpsilonNFA extends Automaton {
+
+    // Compiled form with the epsilon closures precomputed, built on first use
+    private CompiledNFA compiled;
+
     public EpsilonNFA(Set<String> states, Set<String> alphabet, String initialState, Set<String> acceptStates, Map<String, Map<String, Set<String>>> transitions,Map<String, Set<String>> epsilonTransitions) {
         super(states, alphabet, initialState, acceptStates, transitions, "NFA", epsilonTransitions);
     }
 
+    public EpsilonNFA(Automaton automaton) {
+        super(automaton, "NFA");
+    }
+
 
     public Set<String> getNextStates(String currentState, String input) {
         return super.getNextStates(currentState, input);
@@ -73,301 +81,248 @@ public class EpsilonNFA extends Automaton {
     }
 
     public boolean runENFA(String inputString) {
-        // Start with the epsilon closure of the initial state.
-        Set<String> currentStates = new HashSet<>();
-        currentStates.add(getInitialState());
-        currentStates = epsilonClosure(currentStates);
-
-        // Process each symbol in the input string.
-        for (int i = 0; i < inputString.length(); i++) {
-            String symbol = String.valueOf(inputString.charAt(i));
-            Set<String> nextStates = new HashSet<>();
-            for (String state : currentStates) {
-                Map<String, Set<String>> stateTransitions = getTransitions().get(state);
-                if (stateTransitions != null && stateTransitions.get(symbol) != null) {
-                    nextStates.addAll(stateTransitions.get(symbol));
-                }
-            }
-            // After consuming a symbol, update current states to the epsilon closure of nextStates.
-            currentStates = epsilonClosure(nextStates);
-        }
-
-        // Accept if any of the current states is an accepting state.
-        for (String state : currentStates) {
-            if (getAcceptStates().contains(state)) {
-                return true;
-            }
-        }
-        return false;
+        return getCompiled().run(inputString);
     }
 
-    private Set<String> epsilonClosure(Set<String> states) {
-        Set<String> closure = new HashSet<>(states);
-        boolean added = true;
-        while (added) {
-            added = false;
-            Set<String> newStates = new HashSet<>();
-            for (String state : closure) {
-                Set<String> epsTransitions = getEpsilonTransitions().get(state);
-                if (epsTransitions != null) {
-                    for (String next : epsTransitions) {
-                        if (!closure.contains(next)) {
-                            newStates.add(next);
-                        }
-                    }
-                }
-            }
-            if (!newStates.isEmpty()) {
-                closure.addAll(newStates);
-                added = true;
-            }
+    public CompiledNFA getCompiled() {
+        if (compiled == null) {
+            compiled = CompiledNFA.compile(this);
         }
-        return closure;
+        return compiled;
     }
 
     public List<String> generateLanguage(int lengthLimit) {
         List<String> accepted = new ArrayList<>();
-        // Create a set of input symbols excluding epsilon.
-        Set<String> inputSymbols = new HashSet<>(getAlphabet());
-        inputSymbols.remove("epsilon");
-        
-        List<String> allStrings = GenerateString.generateAllStrings(inputSymbols, lengthLimit);
-        for (String s : allStrings) {
-            if (this.runENFA(s)) {
-                accepted.add(s);
-            }
-        }
+        GenerateString.generateLanguage(NFAtoDFA.compile(getCompiled()), lengthLimit, accepted::add);
         return accepted;
     }
 
     public static EpsilonNFA union(Automaton a1, Automaton a2) {
-        //Rename states in a2 to avoid collisions
-        Automaton a2Renamed = renameStates(a2, "2");
-
-        //Combine the sets of states
-        Set<String> newStates = new HashSet<>();
-        newStates.addAll(a1.getStates());
-        newStates.addAll(a2Renamed.getStates());
-
-        //Combine the alphabets 
-        Set<String> newAlphabet = new HashSet<>(a1.getAlphabet());
-        newAlphabet.addAll(a2Renamed.getAlphabet());
-        
-
-        // Merge transitions using helper method to get the transition maps
-        Map<String, Map<String, Set<String>>> newTransitions = new HashMap<>();
-        //
-        for (String state : a1.getStates()) {
-            newTransitions.put(state, cloneTransitionMap(a1.getTransitions().get(state)));
-        }
-        //
-        for (String state : a2Renamed.getStates()) {
-            newTransitions.put(state, cloneTransitionMap(a2Renamed.getTransitions().get(state)));
-        }
+        return union(List.of(a1, a2));
+    }
 
-        //Merge epsilon transitions
-        Map<String, Set<String>> newEps = new HashMap<>();
-        
-        if (a1.getEpsilonTransitions() != null) {
-            for (String s : a1.getEpsilonTransitions().keySet()) {
-                newEps.put(s, new HashSet<>(a1.getEpsilonTransitions().get(s)));
-            }
-        }
-        
-        if (a2Renamed.getEpsilonTransitions() != null) {
-            for (String s : a2Renamed.getEpsilonTransitions().keySet()) {
-                newEps.put(s, new HashSet<>(a2Renamed.getEpsilonTransitions().get(s)));
-            }
+    // A new initial state with an epsilon move to the initial state of every part
+    public static EpsilonNFA union(List<? extends Automaton> parts) {
+        Layout layout = new Layout(parts, "Initial");
+        int[] initials = new int[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            initials[i] = layout.initial(i);
+            layout.acceptAll(i);
         }
+        layout.addEpsilon(layout.added(), initials);
+        return layout.build(layout.added());
+    }
 
-        //Create a new initial state that has epsilon transitions to both old initial states
-        String newInitial = "Initial";
-        newStates.add(newInitial);
-        newEps.put(newInitial, new HashSet<>());
-        newEps.get(newInitial).add(a1.getInitialState());
-        newEps.get(newInitial).add(a2Renamed.getInitialState());
-
-        //Accept states is the union of old accept states
-        Set<String> newAcceptStates = new HashSet<>(a1.getAcceptStates());
-        newAcceptStates.addAll(a2Renamed.getAcceptStates());
-
-        //Build and return the new EpsilonNFA
-        return new EpsilonNFA(
-            newStates, newAlphabet, newInitial, newAcceptStates, newTransitions, newEps
-        );
+    public static EpsilonNFA concatenate(Automaton a1, Automaton a2) {
+        return concatenate(List.of(a1, a2));
     }
 
-    private static Automaton renameStates(Automaton automaton, String prefix) {
-        //Map oldName -> newName
-        Map<String, String> renameMap = new HashMap<>();
-        for (String oldState : automaton.getStates()) {
-            renameMap.put(oldState, prefix + oldState);
+    // Epsilon moves from the accept states of each part to the initial state of the next
+    public static EpsilonNFA concatenate(List<? extends Automaton> parts) {
+        Layout layout = new Layout(parts, null);
+        for (int i = 0; i + 1 < parts.size(); i++) {
+            Automaton part = parts.get(i);
+            int next = layout.initial(i + 1);
+            for (int s = 0; s < part.getNumStates(); s++) {
+                if (part.isAccepting(s)) {
+                    layout.addEpsilon(layout.offset(i) + s, next);
+                }
+            }
         }
+        layout.acceptAll(parts.size() - 1);
+        return layout.build(layout.initial(0));
+    }
 
-        //Build new sets
-        Set<String> newStates = new HashSet<>();
-        for (String s : automaton.getStates()) {
-            newStates.add(renameMap.get(s));
+    // A new initial state, which is the only accept state, with epsilon moves to the old
+    // initial state and back from every old accept state
+    public static EpsilonNFA closure(Automaton a) {
+        Layout layout = new Layout(List.of(a), "Initial");
+        int initial = layout.added();
+        layout.addEpsilon(initial, layout.initial(0));
+        for (int s = 0; s < a.getNumStates(); s++) {
+            if (a.isAccepting(s)) {
+                layout.addEpsilon(s, initial);
+            }
         }
+        layout.accept(initial);
+        return layout.build(initial);
+    }
 
-        //Rename transitions
-        Map<String, Map<String, Set<String>>> newTransitions = new HashMap<>();
-        for (String oldState : automaton.getStates()) {
-            String newState = renameMap.get(oldState);
-            newTransitions.put(newState, new HashMap<>());
-
-            Map<String, Set<String>> oldTransMap = automaton.getTransitions().get(oldState);
-            if (oldTransMap == null) continue;
-
-            for (String symbol : oldTransMap.keySet()) {
-                Set<String> dests = oldTransMap.get(symbol);
-                Set<String> renamedDests = new HashSet<>();
-                for (String d : dests) {
-                    renamedDests.add(renameMap.get(d));
+    // Places automata one after another for the constructions above. State s of part i
+    // becomes offset(i) + s, so nothing is renamed state by state or deep copied and the
+    // work is linear in the total size. Part 1 and later have their names prefixed with
+    // their position (2, 3, ...) and any name still taken gets a #n suffix, which also
+    // keeps an added state from colliding with an earlier one.
+    private static final class Layout {
+        private final List<? extends Automaton> parts;
+        private final int[] offsets;
+        private final int numStates;
+        private final String[] names;
+        private final List<String> symbols = new ArrayList<>();
+        private int alphabetSize;
+        // columns[i][c] is the symbol of part i in result column c, or -1
+        private final int[][] columns;
+        // Epsilon moves added on top of the parts' own, null for most states
+        private final int[][] extraEpsilon;
+        private final BitSet accepting = new BitSet();
+
+        Layout(List<? extends Automaton> parts, String addedState) {
+            if (parts.isEmpty()) {
+                throw new IllegalArgumentException("There are no automata to combine");
+            }
+            this.parts = parts;
+            offsets = new int[parts.size()];
+            int total = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                offsets[i] = total;
+                total += parts.get(i).getNumStates();
+            }
+            numStates = total + (addedState == null ? 0 : 1);
+
+            names = new String[numStates];
+            Set<String> used = new HashSet<>();
+            for (int i = 0; i < parts.size(); i++) {
+                Automaton part = parts.get(i);
+                String prefix = i == 0 ? "" : String.valueOf(i + 1);
+                for (int s = 0; s < part.getNumStates(); s++) {
+                    names[offsets[i] + s] = NFAtoDFA.uniqueName(prefix + part.getStateName(s), used);
                 }
-                newTransitions.get(newState).put(symbol, renamedDests);
             }
-        }
+            if (addedState != null) {
+                names[total] = NFAtoDFA.uniqueName(addedState, used);
+            }
 
-        //Rename epsilon transitions
-        Map<String, Set<String>> newEps = new HashMap<>();
-        if (automaton.getEpsilonTransitions() != null) {
-            for (String oldState : automaton.getEpsilonTransitions().keySet()) {
-                String newState = renameMap.get(oldState);
-                Set<String> oldEps = automaton.getEpsilonTransitions().get(oldState);
-                Set<String> renamedEps = new HashSet<>();
-                for (String d : oldEps) {
-                    renamedEps.add(renameMap.get(d));
+            // Every alphabet comes first, then symbols that only appear in transitions
+            Map<String, Integer> symbolIndex = new HashMap<>();
+            for (Automaton part : parts) {
+                for (String symbol : part.getAlphabet()) {
+                    symbolIndex.computeIfAbsent(symbol, k -> addSymbol(k));
+                }
+            }
+            alphabetSize = symbols.size();
+            for (Automaton part : parts) {
+                for (int a = 0; a < part.getNumSymbols(); a++) {
+                    symbolIndex.computeIfAbsent(part.getSymbol(a), k -> addSymbol(k));
+                }
+            }
+            columns = new int[parts.size()][symbols.size()];
+            for (int i = 0; i < parts.size(); i++) {
+                Arrays.fill(columns[i], -1);
+                Automaton part = parts.get(i);
+                for (int a = 0; a < part.getNumSymbols(); a++) {
+                    columns[i][symbolIndex.get(part.getSymbol(a))] = a;
                 }
-                newEps.put(newState, renamedEps);
             }
+            extraEpsilon = new int[numStates][];
         }
 
-        //Rename initial state
-        String newInitial = renameMap.get(automaton.getInitialState());
-
-        //Rename accept states
-        Set<String> newAccepts = new HashSet<>();
-        for (String a : automaton.getAcceptStates()) {
-            newAccepts.add(renameMap.get(a));
+        private int addSymbol(String symbol) {
+            symbols.add(symbol);
+            return symbols.size() - 1;
         }
 
-        // Build new automaton to return
-        return new Automaton(
-            newStates, automaton.getAlphabet(), newInitial, newAccepts, newTransitions, automaton.getType(), newEps
-        );
-    }
-    //Helper method to create a seperate copy of the transition map
-    private static Map<String, Set<String>> cloneTransitionMap(Map<String, Set<String>> original) {
-        if (original == null) {
-            return new HashMap<>();
-        }
-        Map<String, Set<String>> copy = new HashMap<>();
-        for (String symbol : original.keySet()) {
-            copy.put(symbol, new HashSet<>(original.get(symbol)));
+        int offset(int part) {
+            return offsets[part];
         }
-        return copy;
-    }
 
-    public static EpsilonNFA concatenate(Automaton a1, Automaton a2) {
-        //Rename states in a2 to avoid collisions.
-        Automaton a2Renamed = renameStates(a2, "2");
-
-        //Combine the sets of states.
-        Set<String> newStates = new HashSet<>();
-        newStates.addAll(a1.getStates());
-        newStates.addAll(a2Renamed.getStates());
-
-        //Combine the alphabets.
-        Set<String> newAlphabet = new HashSet<>(a1.getAlphabet());
-        newAlphabet.addAll(a2Renamed.getAlphabet());
-
-        //Merge transitions from both automatons.
-        Map<String, Map<String, Set<String>>> newTransitions = new HashMap<>();
-        for (String state : a1.getStates()) {
-            newTransitions.put(state, cloneTransitionMap(a1.getTransitions().get(state)));
-        }
-        for (String state : a2Renamed.getStates()) {
-            newTransitions.put(state, cloneTransitionMap(a2Renamed.getTransitions().get(state)));
+        int added() {
+            return numStates - 1;
         }
 
-        //Merge epsilon transitions from both automatons.
-        Map<String, Set<String>> newEps = new HashMap<>();
-        if (a1.getEpsilonTransitions() != null) {
-            for (String s : a1.getEpsilonTransitions().keySet()) {
-                newEps.put(s, new HashSet<>(a1.getEpsilonTransitions().get(s)));
+        int initial(int part) {
+            int initial = parts.get(part).getInitialStateIndex();
+            if (initial < 0) {
+                throw new IllegalArgumentException("Initial state is not one of the states: " + parts.get(part).getInitialState());
             }
+            return offsets[part] + initial;
         }
-        if (a2Renamed.getEpsilonTransitions() != null) {
-            for (String s : a2Renamed.getEpsilonTransitions().keySet()) {
-                newEps.put(s, new HashSet<>(a2Renamed.getEpsilonTransitions().get(s)));
-            }
+
+        void accept(int state) {
+            accepting.set(state);
         }
 
-        // For all accept states in the first add an epsilon transition to the initial of the second
-        for (String acceptState : a1.getAcceptStates()) {
-            // Check if newEps has an entry for acceptState if not create one.
-            if (newEps.get(acceptState) == null) {
-                newEps.put(acceptState, new HashSet<>());
+        void acceptAll(int part) {
+            Automaton automaton = parts.get(part);
+            for (int s = 0; s < automaton.getNumStates(); s++) {
+                if (automaton.isAccepting(s)) {
+                    accepting.set(offsets[part] + s);
+                }
             }
-            // add the new epsilon transition.
-            newEps.get(acceptState).add(a2Renamed.getInitialState());
         }
 
-        //Initial state remains the same
-        String newInitial = a1.getInitialState();
-
-        //The new accept states are the ones in the second automaton
-        Set<String> newAcceptStates = new HashSet<>(a2Renamed.getAcceptStates());
-
-        //Build and return the new EpsilonNFA.
-        return new EpsilonNFA(newStates, newAlphabet, newInitial, newAcceptStates, newTransitions, newEps);
-    }
-
-    public static EpsilonNFA closure(Automaton a) {
-        //Create a new initial state for the closure, which will also be an accept state for the empty string
-        String newInitial = "Initial";
-    
-        //Combine both sets of states
-        Set<String> newStates = new HashSet<>(a.getStates());
-        newStates.add(newInitial);
-    
-        //The alphabet remains the same.
-        Set<String> newAlphabet = new HashSet<>(a.getAlphabet());
-    
-        //Clone the transitions from the original automaton.
-        Map<String, Map<String, Set<String>>> newTransitions = new HashMap<>();
-        for (String state : a.getStates()) {
-            newTransitions.put(state, cloneTransitionMap(a.getTransitions().get(state)));
-        }
-    
-        //Merge epsilon transitions.
-        Map<String, Set<String>> newEps = new HashMap<>();
-        // Copy original epsilon transitions, if any.
-        if (a.getEpsilonTransitions() != null) {
-            for (String state : a.getEpsilonTransitions().keySet()) {
-                newEps.put(state, new HashSet<>(a.getEpsilonTransitions().get(state)));
+        void addEpsilon(int from, int... to) {
+            int[] moves = extraEpsilon[from];
+            if (moves == null) {
+                extraEpsilon[from] = to.clone();
+            } else {
+                moves = Arrays.copyOf(moves, moves.length + to.length);
+                System.arraycopy(to, 0, moves, moves.length - to.length, to.length);
+                extraEpsilon[from] = moves;
             }
         }
-        
-        //From the new initial state, add an epsilon transition to the original initial state.
-        newEps.put(newInitial, new HashSet<>());
-        newEps.get(newInitial).add(a.getInitialState());
-        
-        //For every accept state of the original automaton, add an epsilon transition back to the new initial state.
-        for (String acceptState : a.getAcceptStates()) {
-            if (newEps.get(acceptState) == null) {
-                newEps.put(acceptState, new HashSet<>());
+
+        EpsilonNFA build(int initial) {
+            int numSymbols = symbols.size();
+            BitSet hasRow = new BitSet(numStates);
+            BitSet definedCells = new BitSet();
+            BitSet hasEpsilon = new BitSet(numStates);
+            int[] cellStart = new int[numStates * numSymbols + 1];
+            int[] epsilonStart = new int[numStates + 1];
+            int[] targets = new int[16];
+            int[] epsilonTargets = new int[16];
+            int count = 0;
+            int epsilonCount = 0;
+
+            int part = 0;
+            for (int t = 0; t < numStates; t++) {
+                while (part + 1 < parts.size() && t >= offsets[part + 1]) {
+                    part++;
+                }
+                Automaton automaton = parts.get(part);
+                int s = t - offsets[part];
+                boolean inPart = s < automaton.getNumStates();
+                if (inPart && automaton.hasTransitionRow(s)) {
+                    hasRow.set(t);
+                }
+                for (int c = 0; c < numSymbols; c++) {
+                    cellStart[t * numSymbols + c] = count;
+                    int a = inPart ? columns[part][c] : -1;
+                    if (a < 0 || !automaton.hasTransitionCell(s, a)) {
+                        continue;
+                    }
+                    definedCells.set(t * numSymbols + c);
+                    int n = automaton.getNumTargets(s, a);
+                    if (count + n > targets.length) {
+                        targets = Arrays.copyOf(targets, Math.max(targets.length * 2, count + n));
+                    }
+                    for (int i = 0; i < n; i++) {
+                        targets[count++] = offsets[part] + automaton.getTarget(s, a, i);
+                    }
+                }
+
+                epsilonStart[t] = epsilonCount;
+                int own = inPart ? automaton.getNumEpsilonTargets(s) : 0;
+                int[] extra = extraEpsilon[t] == null ? new int[0] : extraEpsilon[t];
+                if ((inPart && automaton.hasEpsilonRow(s)) || extra.length > 0) {
+                    hasEpsilon.set(t);
+                }
+                if (epsilonCount + own + extra.length > epsilonTargets.length) {
+                    epsilonTargets = Arrays.copyOf(epsilonTargets, Math.max(epsilonTargets.length * 2, epsilonCount + own + extra.length));
+                }
+                for (int i = 0; i < own; i++) {
+                    epsilonTargets[epsilonCount++] = offsets[part] + automaton.getEpsilonTarget(s, i);
+                }
+                for (int d : extra) {
+                    epsilonTargets[epsilonCount++] = d;
+                }
             }
-            newEps.get(acceptState).add(newInitial);
+            cellStart[numStates * numSymbols] = count;
+            epsilonStart[numStates] = epsilonCount;
+
+            return new EpsilonNFA(new Automaton(names, symbols.toArray(new String[0]), alphabetSize, names[initial],
+                    accepting.stream().toArray(), hasRow, definedCells, cellStart, Arrays.copyOf(targets, count),
+                    hasEpsilon, epsilonStart, Arrays.copyOf(epsilonTargets, epsilonCount), "NFA"));
         }
-        
-        //The new accept states include the new initial state for the empty string
-        Set<String> newAcceptStates = new HashSet<>();
-        newAcceptStates.add(newInitial);
-        
-        //Return the new EpsilonNFA representing the closure.
-        return new EpsilonNFA(newStates, newAlphabet, newInitial, newAcceptStates, newTransitions, newEps);
     }
     
     
@@ -3,151 +3,568 @@
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.stream.IntStream;
 
+// Reads transition table files. The bytes are tokenized directly, without regexes or a
+// String per line, and large files are split into line aligned chunks parsed in parallel.
 public class FileParser {
+
+    // Files smaller than this are parsed as a single chunk
+    static final long PARALLEL_THRESHOLD = 8L << 20;
+    // Chunks are read into memory whole, so their size is capped
+    private static final long MAX_CHUNK_BYTES = 256L << 20;
+
     public static Automaton parseFile(String filePath) throws IOException {
-        System.out.println("Attempting to read file from: " + filePath);
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-
-        Set<String> states = new HashSet<>();
-        Set<String> alphabet = new LinkedHashSet<>(); 
-        String initialState = "";
-        Set<String> acceptStates = new HashSet<>();
-        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
-        Map<String, Set<String>> epsilonTransitions = new HashMap<>();
-
-        String line;
-        boolean firstLine = true;
-        boolean isEpsilonNFA = false;
-        boolean isNFA = false;
-
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            // Skip empty or commented lines
-            if (line.isEmpty() || line.startsWith("#")) {
-                continue;
+        return parseTable(filePath).toAutomaton();
+    }
+
+    public static AutomatonTable parseTable(String filePath) throws IOException {
+        try (Metrics.Phase phase = Metrics.start("parse")) {
+            AutomatonTable table = readTable(filePath);
+            phase.states(table.getNumStates()).transitions(table.getNumTransitions());
+            return table;
+        }
+    }
+
+    private static AutomatonTable readTable(String filePath) throws IOException {
+        Chunk[] chunks;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // One chunk per core, since every chunk interns the names it sees on its own
+            long target = size;
+            int cores = Runtime.getRuntime().availableProcessors();
+            if (size >= PARALLEL_THRESHOLD && cores > 1) {
+                target = size / cores + 1;
             }
+            target = Math.max(1 << 20, Math.min(target, MAX_CHUNK_BYTES));
 
-            // Parse the header line for the alphabet
-            if (firstLine) {
-                // Split on | then split the second part by whitespace
-                String[] parts = line.split("\\|");
-                if (parts.length < 2) {
-                    // Not a valid header line so skip
-                    continue;
-                }
-                // Split on white space to get each symbol
-                String[] symbols = parts[1].trim().split("\\s+");
-                for (String symbol : symbols) {
-                    if (symbol.equals("epsilon")) {
-                        isEpsilonNFA = true;
+            List<Chunk> list = new ArrayList<>();
+            long start = 0;
+            while (start < size) {
+                long end = lineEnd(channel, Math.min(size, start + target), size);
+                byte[] data = new byte[(int) (end - start)];
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        throw new EOFException(filePath);
                     }
-                    alphabet.add(symbol);
                 }
-                firstLine = false;
-                continue;
+                list.add(new Chunk(data));
+                start = end;
             }
+            chunks = list.toArray(new Chunk[0]);
+        }
 
-            //Parse state/transition lines
-            String[] parts = line.split("\\|");
-            if (parts.length < 1) {
-                // Not a valid state/transition line
-                continue;
+        // The header may only come after comments, so chunks are parsed in order until it is found
+        String[] symbols = null;
+        int next = 0;
+        while (symbols == null && next < chunks.length) {
+            Chunk chunk = chunks[next++];
+            chunk.parse(null);
+            if (chunk.errorMessage != null) {
+                break;
             }
+            symbols = chunk.symbols;
+        }
+        final String[] alphabet = symbols;
+        if (alphabet != null) {
+            IntStream.range(next, chunks.length).parallel().forEach(i -> chunks[i].parse(alphabet));
+        }
+        return merge(filePath, chunks);
+    }
 
-            // parts[0] has the state info on initial or accept
-            String stateInfo = parts[0].trim(); 
-
-            // Determine if it’s an initial or accept state
-            boolean isInitial = stateInfo.contains("->");
-            boolean isAccept  = stateInfo.contains("*");
+    // Position just past the line break at or after from
+    private static long lineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long pos = from;
+        while (pos < size) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
 
-            // Extract the raw state name by removing extras
-            String rawStateName = stateInfo.replace("->", "").replace("*", "").trim();
+    // Combines the chunks in file order, numbering states globally and checking the rows
+    private static AutomatonTable merge(String filePath, Chunk[] chunks) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        String[] symbols = null;
+        int headerLine = 0;
+        int baseLine = 0;
+        boolean nfa = false;
 
-            // Add that state to the set of all states
-            states.add(rawStateName);
+        int[] rowLine = new int[16];
+        int[] rowChunk = new int[16];
+        int[] rowIndex = new int[16];
+        int[] rowOrder = new int[16];
+        int rows = 0;
+        int initialState = -1;
+        int initialLine = 0;
+        int[][] localToGlobal = new int[chunks.length][];
 
-            // If initial add to initial states
-            if (isInitial) {
-                initialState = rawStateName;
+        for (int c = 0; c < chunks.length; c++) {
+            Chunk chunk = chunks[c];
+            if (chunk.symbols != null && symbols == null) {
+                symbols = chunk.symbols;
+                headerLine = baseLine + chunk.headerLine;
+            }
+            int[] global = new int[chunk.names.size()];
+            for (int i = 0; i < global.length; i++) {
+                String name = chunk.names.get(i);
+                Integer id = ids.get(name);
+                if (id == null) {
+                    id = names.size();
+                    ids.put(name, id);
+                    names.add(name);
+                }
+                global[i] = id;
             }
-            // If accept add to acceptStates
-            if (isAccept) {
-                acceptStates.add(rawStateName);
+            localToGlobal[c] = global;
+            if (names.size() > rowLine.length) {
+                int capacity = Math.max(names.size(), rowLine.length * 2);
+                rowLine = Arrays.copyOf(rowLine, capacity);
+                rowChunk = Arrays.copyOf(rowChunk, capacity);
+                rowIndex = Arrays.copyOf(rowIndex, capacity);
             }
 
-            // Parse the transition portion 
-            String[] transitionArray = new String[0];
-            if (parts.length > 1) {
-                transitionArray = parts[1].trim().split("\\s+");
+            for (int r = 0; r < chunk.rows; r++) {
+                int state = global[chunk.rowState[r]];
+                int line = baseLine + chunk.rowLine[r];
+                if (rowLine[state] != 0) {
+                    throw new AutomatonParseException(filePath, line,
+                            "state " + names.get(state) + " is already defined on line " + rowLine[state]);
+                }
+                if ((chunk.rowFlags[r] & Chunk.INITIAL) != 0) {
+                    if (initialState >= 0) {
+                        throw new AutomatonParseException(filePath, line,
+                                "second initial state " + names.get(state) + ", " + names.get(initialState) + " is marked on line " + initialLine);
+                    }
+                    initialState = state;
+                    initialLine = line;
+                }
+                rowLine[state] = line;
+                rowChunk[state] = c;
+                rowIndex[state] = r;
+                if (rows == rowOrder.length) {
+                    rowOrder = Arrays.copyOf(rowOrder, rows * 2);
+                }
+                rowOrder[rows++] = state;
             }
+            if (chunk.errorMessage != null) {
+                throw new AutomatonParseException(filePath, baseLine + chunk.errorLine, chunk.errorMessage);
+            }
+            nfa |= chunk.nfa;
+            baseLine += chunk.lines;
+        }
 
-            // Make sure we have a 
-            Map<String, Set<String>> stateTransitions = transitions.get(rawStateName);
-            if (stateTransitions == null) {
-                stateTransitions = new HashMap<>();
-                transitions.put(rawStateName, stateTransitions);
+        if (symbols == null) {
+            throw new AutomatonParseException(filePath, 0, "missing the header line of the form '| <symbols>'");
+        }
+        if (initialState < 0) {
+            throw new AutomatonParseException(filePath, 0, "no initial state is marked with ->");
+        }
+
+        // Lay every state's cells out in one array, states without a line get empty cells
+        int numStates = names.size();
+        int numSymbols = symbols.length;
+        int[] cellStart = new int[numStates * numSymbols + 1];
+        long total = 0;
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                cellStart[s * numSymbols + a] = (int) total;
+                if (rowLine[s] != 0) {
+                    total += chunks[rowChunk[s]].cellSize(rowIndex[s], a);
+                }
+            }
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new AutomatonParseException(filePath, headerLine, "too many transitions to store");
+        }
+        cellStart[numStates * numSymbols] = (int) total;
+        int[] targets = new int[(int) total];
+        boolean[] accepting = new boolean[numStates];
+        for (int s = 0; s < numStates; s++) {
+            if (rowLine[s] == 0) {
+                continue;
             }
+            Chunk chunk = chunks[rowChunk[s]];
+            int[] global = localToGlobal[rowChunk[s]];
+            int r = rowIndex[s];
+            accepting[s] = (chunk.rowFlags[r] & Chunk.ACCEPT) != 0;
+            int pos = cellStart[s * numSymbols];
+            for (int i = chunk.cellStart(r, 0); i < chunk.cellStart(r, numSymbols); i++) {
+                targets[pos++] = global[chunk.targets[i]];
+            }
+        }
+
+        String type = "DFA";
+        if (Arrays.asList(symbols).contains("epsilon")) {
+            type = "EpsilonNFA";
+        } else if (nfa) {
+            type = "NFA";
+        }
+        return new AutomatonTable(names.toArray(new String[0]), symbols, initialState, accepting,
+                Arrays.copyOf(rowOrder, rows), cellStart, targets, type);
+    }
+
+    // A line aligned piece of the file. Names are interned per chunk on their bytes so a
+    // String is only made the first time a name is seen.
+    private static final class Chunk {
+        static final byte INITIAL = 1;
+        static final byte ACCEPT = 2;
+
+        private final byte[] data;
+        // Local line count, one based line numbers below are relative to the chunk
+        int lines;
+
+        String[] symbols;
+        int headerLine;
+
+        final List<String> names = new ArrayList<>();
+        private int[] nameStart = new int[64];
+        private int[] nameLength = new int[64];
+        private byte[] namePool = new byte[1024];
+        private int namePoolSize;
+        private long[] slots = new long[128];
+
+        int rows;
+        int[] rowState = new int[64];
+        int[] rowLine = new int[64];
+        byte[] rowFlags = new byte[64];
+        // cellEnd[row * symbols + a] is one past the last target of that cell
+        private int[] cellEnd = new int[256];
+        int[] targets = new int[256];
+        private int numTargets;
+        boolean nfa;
 
-            // For each symbol in the alphabet parse the corresponding transition
+        int errorLine;
+        String errorMessage;
 
-            int index = 0;
-            for (String symbol : alphabet) {
-                
-                if (index >= transitionArray.length) {
-                    // No transition info for this symbol
-                    stateTransitions.put(symbol, Collections.emptySet());
-                    index++;
+        Chunk(byte[] data) {
+            this.data = data;
+        }
+
+        int cellStart(int row, int symbol) {
+            int index = row * symbols.length + symbol;
+            return index == 0 ? 0 : cellEnd[index - 1];
+        }
+
+        int cellSize(int row, int symbol) {
+            return cellEnd[row * symbols.length + symbol] - cellStart(row, symbol);
+        }
+
+        // Parses every line. With no alphabet the first line that is not blank or a comment is the header.
+        void parse(String[] alphabet) {
+            symbols = alphabet;
+            int pos = 0;
+            while (pos < data.length) {
+                int end = pos;
+                while (end < data.length && data[end] != '\n' && data[end] != '\r') {
+                    end++;
+                }
+                int lineNumber = ++lines;
+                int from = pos;
+                pos = end + 1;
+                if (end < data.length && data[end] == '\r' && pos < data.length && data[pos] == '\n') {
+                    pos++;
+                }
+                if (errorMessage != null) {
                     continue;
                 }
 
-                String nextStateString = transitionArray[index].trim(); 
-                index++;
-
-                // Remove the braces
-                String insideBraces = nextStateString.replace("{", "").replace("}", "").trim();
-                if (insideBraces.isEmpty()) {
-                    stateTransitions.put(symbol, Collections.emptySet());
+                // Trim the same way String.trim does
+                int to = end;
+                while (from < to && (data[from] & 0xff) <= ' ') {
+                    from++;
+                }
+                while (to > from && (data[to - 1] & 0xff) <= ' ') {
+                    to--;
+                }
+                if (from == to || data[from] == '#') {
                     continue;
                 }
+                if (symbols == null) {
+                    parseHeader(from, to, lineNumber);
+                } else {
+                    parseRow(from, to, lineNumber);
+                }
+            }
+        }
+
+        private void error(int lineNumber, String message) {
+            errorLine = lineNumber;
+            errorMessage = message;
+        }
+
+        private int indexOf(byte b, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (data[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void parseHeader(int from, int to, int lineNumber) {
+            int bar = indexOf((byte) '|', from, to);
+            if (bar < 0) {
+                error(lineNumber, "expected the header line of the form '| <symbols>'");
+                return;
+            }
+            int bar2 = indexOf((byte) '|', bar + 1, to);
+            int end = bar2 < 0 ? to : bar2;
+            Set<String> alphabet = new LinkedHashSet<>();
+            int pos = bar + 1;
+            while (true) {
+                while (pos < end && (data[pos] & 0xff) <= ' ') {
+                    pos++;
+                }
+                if (pos == end) {
+                    break;
+                }
+                int tokenEnd = pos;
+                while (tokenEnd < end && (data[tokenEnd] & 0xff) > ' ') {
+                    tokenEnd++;
+                }
+                alphabet.add(new String(data, pos, tokenEnd - pos, StandardCharsets.UTF_8));
+                pos = tokenEnd;
+            }
+            if (alphabet.isEmpty()) {
+                error(lineNumber, "the header lists no symbols");
+                return;
+            }
+            symbols = alphabet.toArray(new String[0]);
+            headerLine = lineNumber;
+        }
 
-                // If there's a comma then there are multiple possible next states so it is a NFA
-                String[] stateArray = insideBraces.split(",");
-                if (stateArray.length > 1) {
-                    isNFA = true;
+        private void parseRow(int from, int to, int lineNumber) {
+            int bar = indexOf((byte) '|', from, to);
+            int infoEnd = bar < 0 ? to : bar;
+
+            // Leading -> and * markers are skipped in place. Anything unusual goes through
+            // the string replacements the table format has always used.
+            byte flags = 0;
+            int pos = from;
+            while (pos < infoEnd) {
+                if ((data[pos] & 0xff) <= ' ') {
+                    pos++;
+                } else if (data[pos] == '*') {
+                    flags |= ACCEPT;
+                    pos++;
+                } else if (data[pos] == '-' && pos + 1 < infoEnd && data[pos + 1] == '>') {
+                    flags |= INITIAL;
+                    pos += 2;
+                } else {
+                    break;
                 }
+            }
+            int nameEnd = infoEnd;
+            while (nameEnd > pos && (data[nameEnd - 1] & 0xff) <= ' ') {
+                nameEnd--;
+            }
+            int state;
+            if (hasMarker(pos, nameEnd)) {
+                String info = new String(data, from, infoEnd - from, StandardCharsets.UTF_8);
+                flags = 0;
+                if (info.contains("->")) {
+                    flags |= INITIAL;
+                }
+                if (info.contains("*")) {
+                    flags |= ACCEPT;
+                }
+                byte[] name = info.replace("->", "").replace("*", "").trim().getBytes(StandardCharsets.UTF_8);
+                if (name.length == 0) {
+                    error(lineNumber, "missing a state name");
+                    return;
+                }
+                state = intern(name, 0, name.length);
+            } else {
+                if (pos == nameEnd) {
+                    error(lineNumber, "missing a state name");
+                    return;
+                }
+                state = intern(data, pos, nameEnd - pos);
+            }
+            addRow(state, lineNumber, flags);
 
-                Set<String> nextStates = new HashSet<>();
-                for (String s : stateArray) {
-                    String dest = s.trim();
-                    if (!dest.isEmpty()) {
-                        nextStates.add(dest);
-                        states.add(dest);
+            int cell = 0;
+            if (bar >= 0) {
+                int bar2 = indexOf((byte) '|', bar + 1, to);
+                int end = bar2 < 0 ? to : bar2;
+                pos = bar + 1;
+                while (true) {
+                    while (pos < end && (data[pos] & 0xff) <= ' ') {
+                        pos++;
+                    }
+                    if (pos == end) {
+                        break;
                     }
+                    int tokenEnd = pos;
+                    while (tokenEnd < end && (data[tokenEnd] & 0xff) > ' ') {
+                        tokenEnd++;
+                    }
+                    if (cell == symbols.length) {
+                        error(lineNumber, "more cells than the " + symbols.length + " symbols in the header");
+                        return;
+                    }
+                    parseCell(pos, tokenEnd);
+                    cellEnd[(rows - 1) * symbols.length + cell] = numTargets;
+                    cell++;
+                    pos = tokenEnd;
                 }
+            }
+            // Missing cells have no transitions
+            for (; cell < symbols.length; cell++) {
+                cellEnd[(rows - 1) * symbols.length + cell] = numTargets;
+            }
+        }
 
-                // If symbol is epsilon we will store in epsilonTransitions
-                // else store in stateTransitions
-                if (symbol.equals("epsilon")) {
-                    epsilonTransitions.put(rawStateName, nextStates);
-                } else {
-                    stateTransitions.put(symbol, nextStates);
+        private boolean hasMarker(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (data[i] == '*' || (data[i] == '-' && i + 1 < to && data[i + 1] == '>')) {
+                    return true;
                 }
             }
+            return false;
         }
-        reader.close();
 
-        // Decide on automaton type
-        String automatonType = "DFA";
-        if (isEpsilonNFA) {
-            automatonType = "EpsilonNFA";
-        } else if (isNFA) {
-            automatonType = "NFA";
+        // A cell is {q1,q2}; the braces are dropped wherever they appear
+        private void parseCell(int from, int to) {
+            byte[] bytes = data;
+            if (to - from >= 2 && data[from] == '{' && data[to - 1] == '}') {
+                from++;
+                to--;
+            }
+            if (indexOf((byte) '{', from, to) >= 0 || indexOf((byte) '}', from, to) >= 0) {
+                bytes = new byte[to - from];
+                int n = 0;
+                for (int i = from; i < to; i++) {
+                    if (data[i] != '{' && data[i] != '}') {
+                        bytes[n++] = data[i];
+                    }
+                }
+                from = 0;
+                to = n;
+            }
+
+            // Like String.split(","), trailing empty names do not count towards the size
+            int pieces = 0;
+            int count = 0;
+            int pos = from;
+            while (pos < to) {
+                int end = pos;
+                while (end < to && bytes[end] != ',') {
+                    end++;
+                }
+                count++;
+                if (end > pos) {
+                    addTarget(intern(bytes, pos, end - pos));
+                    pieces = count;
+                }
+                pos = end + 1;
+            }
+            if (pieces > 1) {
+                nfa = true;
+            }
+        }
+
+        private void addRow(int state, int lineNumber, byte flags) {
+            if (rows == rowState.length) {
+                rowState = Arrays.copyOf(rowState, rows * 2);
+                rowLine = Arrays.copyOf(rowLine, rows * 2);
+                rowFlags = Arrays.copyOf(rowFlags, rows * 2);
+            }
+            if ((rows + 1) * symbols.length > cellEnd.length) {
+                cellEnd = Arrays.copyOf(cellEnd, Math.max(cellEnd.length * 2, (rows + 1) * symbols.length));
+            }
+            rowState[rows] = state;
+            rowLine[rows] = lineNumber;
+            rowFlags[rows] = flags;
+            rows++;
+        }
+
+        private void addTarget(int state) {
+            if (numTargets == targets.length) {
+                targets = Arrays.copyOf(targets, numTargets * 2);
+            }
+            targets[numTargets++] = state;
         }
 
-        // Build and return the Automaton
-        return new Automaton(states,alphabet, initialState, acceptStates, transitions, automatonType, epsilonTransitions);
+        // Open addressing table from name bytes to local ids. A slot holds the name's hash
+        // next to its id, so most probes never touch the pooled bytes.
+        private int intern(byte[] bytes, int from, int length) {
+            int hash = hash(bytes, from, length);
+            int mask = slots.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long entry = slots[slot];
+                if (entry == 0) {
+                    return addName(bytes, from, length, hash, slot);
+                }
+                int id = (int) entry - 1;
+                if ((int) (entry >>> 32) == hash && nameLength[id] == length
+                        && Arrays.equals(namePool, nameStart[id], nameStart[id] + length, bytes, from, from + length)) {
+                    return id;
+                }
+            }
+        }
+
+        private static int hash(byte[] bytes, int from, int length) {
+            int hash = 1;
+            for (int i = from; i < from + length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 15);
+        }
+
+        private int addName(byte[] bytes, int from, int length, int hash, int slot) {
+            int id = names.size();
+            names.add(new String(bytes, from, length, StandardCharsets.UTF_8));
+            if (id == nameStart.length) {
+                nameStart = Arrays.copyOf(nameStart, id * 2);
+                nameLength = Arrays.copyOf(nameLength, id * 2);
+            }
+            if (namePoolSize + length > namePool.length) {
+                namePool = Arrays.copyOf(namePool, Math.max(namePool.length * 2, namePoolSize + length));
+            }
+            System.arraycopy(bytes, from, namePool, namePoolSize, length);
+            nameStart[id] = namePoolSize;
+            nameLength[id] = length;
+            namePoolSize += length;
+            slots[slot] = (long) hash << 32 | (id + 1);
+            if (names.size() * 2 > slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private void rehash() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            int mask = slots.length - 1;
+            for (long entry : old) {
+                if (entry != 0) {
+                    int slot = (int) (entry >>> 32) & mask;
+                    while (slots[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = entry;
+                }
+            }
+        }
     }
 }
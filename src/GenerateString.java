@@ -3,28 +3,72 @@
  */
 
 import java.util.*;
+import java.util.function.*;
 
 public class GenerateString {
 
-    public static void generateAllStringsHelper(Set<String> alphabet, int targetLength, String current, List<String> results) {
-        if (current.length() == targetLength) {
-            results.add(current);
+    // Streams every string of length 0 to lengthLimit accepted by the DFA, shortest first and
+    // in symbol order within a length. The search walks the DFA itself, so each prefix is
+    // extended from the state it already reached, and a prefix is only extended if some
+    // completion of the remaining length is accepted.
+    public static void generateLanguage(CompiledDFA dfa, int lengthLimit, Consumer<String> out) {
+        try (Metrics.Phase phase = Metrics.start("enumerate")) {
+            phase.states(dfa.getNumStates());
+            BitSet[] live = liveStates(dfa, lengthLimit);
+            StringBuilder prefix = new StringBuilder();
+            Consumer<String> counted = s -> {
+                phase.items(1);
+                out.accept(s);
+            };
+            for (int len = 0; len <= lengthLimit; len++) {
+                if (live[len].get(dfa.getInitialState())) {
+                    generateHelper(dfa, live, dfa.getInitialState(), len, prefix, counted);
+                }
+            }
+        }
+    }
+
+    private static void generateHelper(CompiledDFA dfa, BitSet[] live, int state, int remaining, StringBuilder prefix, Consumer<String> out) {
+        if (remaining == 0) {
+            out.accept(prefix.toString());
             return;
         }
-        // Add each symbol to current string
-        for (String symbol : alphabet) {
-            generateAllStringsHelper(alphabet, targetLength, current + symbol, results);
+        int length = prefix.length();
+        SymbolMap symbols = dfa.getSymbols();
+        for (int a = 0; a < symbols.size(); a++) {
+            int next = dfa.step(state, a);
+            // Skip the symbol if nothing of the remaining length is accepted after it
+            if (next != CompiledDFA.DEAD && live[remaining - 1].get(next)) {
+                prefix.append(symbols.getSymbol(a));
+                generateHelper(dfa, live, next, remaining - 1, prefix, out);
+                prefix.setLength(length);
+            }
         }
     }
 
-    public static List<String> generateAllStrings(Set<String> alphabet, int lengthLimit) {
-        List<String> results = new ArrayList<>();
-        // Add the empty string.
-        results.add("");
-        // For each length from 1 to lengthLimit generate the possible strings
-        for (int len = 1; len <= lengthLimit; len++) {
-            generateAllStringsHelper(alphabet, len, "", results);
+    // live[r] holds the states from which some string of exactly length r is accepted
+    private static BitSet[] liveStates(CompiledDFA dfa, int lengthLimit) {
+        int n = dfa.getNumStates();
+        int k = dfa.getSymbols().size();
+        BitSet[] live = new BitSet[lengthLimit + 1];
+        live[0] = new BitSet(n);
+        for (int s = 0; s < n; s++) {
+            if (dfa.isAccepting(s)) {
+                live[0].set(s);
+            }
+        }
+        for (int r = 1; r <= lengthLimit; r++) {
+            live[r] = new BitSet(n);
+            for (int s = 0; s < n; s++) {
+                for (int a = 0; a < k; a++) {
+                    int next = dfa.step(s, a);
+                    if (next != CompiledDFA.DEAD && live[r - 1].get(next)) {
+                        live[r].set(s);
+                        break;
+                    }
+                }
+            }
         }
-        return results;
+        return live;
     }
 }
@@ -0,0 +1,117 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Decision procedures on DFA languages: emptiness, inclusion and equivalence.
+// Emptiness and inclusion search the automaton or the product breadth first and
+// stop at the first string that settles the question, which is also the shortest.
+public class LanguageChecks {
+
+    // Shortest accepted string, or null if the language is empty
+    public static String shortestAccepted(CompiledDFA dfa) {
+        int n = dfa.getNumStates();
+        int k = dfa.getSymbols().size();
+        int[] parent = new int[n];
+        int[] via = new int[n];
+        Arrays.fill(parent, -2);
+        int[] queue = new int[n];
+        int tail = 0;
+        queue[tail++] = dfa.getInitialState();
+        parent[dfa.getInitialState()] = -1;
+        for (int head = 0; head < tail; head++) {
+            int s = queue[head];
+            if (dfa.isAccepting(s)) {
+                StringBuilder witness = new StringBuilder();
+                List<String> path = new ArrayList<>();
+                for (int t = s; parent[t] != -1; t = parent[t]) {
+                    path.add(dfa.getSymbols().getSymbol(via[t]));
+                }
+                for (int i = path.size() - 1; i >= 0; i--) {
+                    witness.append(path.get(i));
+                }
+                return witness.toString();
+            }
+            for (int a = 0; a < k; a++) {
+                int t = dfa.step(s, a);
+                if (t != CompiledDFA.DEAD && parent[t] == -2) {
+                    parent[t] = s;
+                    via[t] = a;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Shortest string accepted by the first DFA but not the second, or null if L(dfa1) is a subset of L(dfa2)
+    public static String subsetCounterexample(CompiledDFA dfa1, CompiledDFA dfa2) {
+        return ProductDFA.shortestWitness(dfa1, dfa2, ProductOp.DIFFERENCE);
+    }
+
+    // Hopcroft and Karp's near linear equivalence test. States known to be equivalent are
+    // merged in a union-find structure, so each merge is checked only once.
+    public static boolean equivalent(CompiledDFA dfa1, CompiledDFA dfa2) {
+        SymbolMap symbols = ProductDFA.mergeSymbols(dfa1, dfa2);
+        int k = symbols.size();
+        int[] symbols1 = ProductDFA.remap(symbols, dfa1.getSymbols());
+        int[] symbols2 = ProductDFA.remap(symbols, dfa2.getSymbols());
+        int sink1 = dfa1.getNumStates();
+        int sink2 = dfa2.getNumStates();
+        // States of the second DFA are numbered after the first DFA and its sink
+        int offset = sink1 + 1;
+
+        int[] parent = new int[offset + sink2 + 1];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        Deque<int[]> pending = new ArrayDeque<>();
+        union(parent, dfa1.getInitialState(), offset + dfa2.getInitialState());
+        pending.add(new int[] {dfa1.getInitialState(), dfa2.getInitialState()});
+
+        while (!pending.isEmpty()) {
+            int[] pair = pending.poll();
+            int s1 = pair[0];
+            int s2 = pair[1];
+            if ((s1 != sink1 && dfa1.isAccepting(s1)) != (s2 != sink2 && dfa2.isAccepting(s2))) {
+                return false;
+            }
+            for (int a = 0; a < k; a++) {
+                int next1 = ProductDFA.step(dfa1, s1, symbols1[a], sink1);
+                int next2 = ProductDFA.step(dfa2, s2, symbols2[a], sink2);
+                if (union(parent, next1, offset + next2)) {
+                    pending.add(new int[] {next1, next2});
+                }
+            }
+        }
+        return true;
+    }
+
+    // Shortest string accepted by exactly one of the DFAs, or null if they are equivalent
+    public static String distinguishingString(CompiledDFA dfa1, CompiledDFA dfa2) {
+        if (equivalent(dfa1, dfa2)) {
+            return null;
+        }
+        return ProductDFA.shortestWitness(dfa1, dfa2, ProductOp.XOR);
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    // Merges the classes of x and y, returns false if they were already the same
+    private static boolean union(int[] parent, int x, int y) {
+        int rootX = find(parent, x);
+        int rootY = find(parent, y);
+        if (rootX == rootY) {
+            return false;
+        }
+        parent[rootY] = rootX;
+        return true;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.math.BigInteger;
+import java.util.*;
+
+// Counts the strings a DFA accepts without listing them. counts[r][s] is the
+// number of strings of length r accepted from state s, and each length follows
+// from the previous one through the transition table. For very long lengths the
+// counts come from powers of the transition matrix instead, which takes
+// O(n^3 log length) multiplications rather than length passes over the table.
+//
+// The counts grow exponentially with the length, so there is also a modular mode that
+// keeps every count below a modulus in long arithmetic. The modulus is capped so the
+// product of two residues still fits in a long.
+public class LanguageCounter {
+
+    // Lengths above this use matrix exponentiation rather than one pass per length
+    public static final int PER_LENGTH_LIMIT = 10000;
+
+    // Largest modulus m with (m - 1) * (m - 1) + (m - 1) below Long.MAX_VALUE
+    public static final long MAX_MODULUS = 3037000499L;
+
+    // Number of accepted strings of each length 0 to lengthLimit
+    public static BigInteger[] countByLength(CompiledDFA dfa, int lengthLimit) {
+        int n = dfa.getNumStates();
+        int k = dfa.getSymbols().size();
+        BigInteger[] result = new BigInteger[lengthLimit + 1];
+        BigInteger[] current = new BigInteger[n];
+        for (int s = 0; s < n; s++) {
+            current[s] = dfa.isAccepting(s) ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        result[0] = current[dfa.getInitialState()];
+        BigInteger[] next = new BigInteger[n];
+        for (int r = 1; r <= lengthLimit; r++) {
+            for (int s = 0; s < n; s++) {
+                BigInteger sum = BigInteger.ZERO;
+                for (int a = 0; a < k; a++) {
+                    int t = dfa.step(s, a);
+                    if (t != CompiledDFA.DEAD) {
+                        sum = sum.add(current[t]);
+                    }
+                }
+                next[s] = sum;
+            }
+            BigInteger[] swap = current;
+            current = next;
+            next = swap;
+            result[r] = current[dfa.getInitialState()];
+        }
+        return result;
+    }
+
+    // Number of accepted strings of exactly the given length and of every length up to it,
+    // returned as { exactly, upTo }
+    public static BigInteger[] countByPower(CompiledDFA dfa, long length) {
+        int n = dfa.getNumStates();
+        int k = dfa.getSymbols().size();
+        // One extra row and column sums the strings already accepted, so the matrix power
+        // yields the running total alongside the exact count
+        int size = n + 1;
+        BigInteger[][] matrix = zero(size);
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < k; a++) {
+                int t = dfa.step(s, a);
+                if (t != CompiledDFA.DEAD) {
+                    matrix[s][t] = matrix[s][t].add(BigInteger.ONE);
+                }
+            }
+            if (dfa.isAccepting(s)) {
+                matrix[s][n] = BigInteger.ONE;
+            }
+        }
+        matrix[n][n] = BigInteger.ONE;
+
+        BigInteger[][] power = power(matrix, length);
+        int start = dfa.getInitialState();
+        BigInteger exactly = BigInteger.ZERO;
+        for (int s = 0; s < n; s++) {
+            if (dfa.isAccepting(s)) {
+                exactly = exactly.add(power[start][s]);
+            }
+        }
+        // power[start][n] covers lengths 0 to length - 1, add the exact length on top
+        BigInteger upTo = power[start][n].add(exactly);
+        return new BigInteger[] {exactly, upTo};
+    }
+
+    private static BigInteger[][] power(BigInteger[][] matrix, long exponent) {
+        int size = matrix.length;
+        BigInteger[][] result = zero(size);
+        for (int i = 0; i < size; i++) {
+            result[i][i] = BigInteger.ONE;
+        }
+        BigInteger[][] base = matrix;
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) {
+                result = multiply(result, base);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                base = multiply(base, base);
+            }
+        }
+        return result;
+    }
+
+    private static BigInteger[][] multiply(BigInteger[][] x, BigInteger[][] y) {
+        int size = x.length;
+        BigInteger[][] product = zero(size);
+        for (int i = 0; i < size; i++) {
+            for (int m = 0; m < size; m++) {
+                if (x[i][m].signum() == 0) {
+                    continue;
+                }
+                for (int j = 0; j < size; j++) {
+                    if (y[m][j].signum() != 0) {
+                        product[i][j] = product[i][j].add(x[i][m].multiply(y[m][j]));
+                    }
+                }
+            }
+        }
+        return product;
+    }
+
+    private static BigInteger[][] zero(int size) {
+        BigInteger[][] matrix = new BigInteger[size][size];
+        for (BigInteger[] row : matrix) {
+            Arrays.fill(row, BigInteger.ZERO);
+        }
+        return matrix;
+    }
+
+    // Number of accepted strings of each length 0 to lengthLimit, modulo modulus
+    public static long[] countByLength(CompiledDFA dfa, int lengthLimit, long modulus) {
+        checkModulus(modulus);
+        int n = dfa.getNumStates();
+        int k = dfa.getSymbols().size();
+        long[] result = new long[lengthLimit + 1];
+        long[] current = new long[n];
+        for (int s = 0; s < n; s++) {
+            current[s] = dfa.isAccepting(s) ? 1 % modulus : 0;
+        }
+        result[0] = current[dfa.getInitialState()];
+        long[] next = new long[n];
+        for (int r = 1; r <= lengthLimit; r++) {
+            for (int s = 0; s < n; s++) {
+                long sum = 0;
+                for (int a = 0; a < k; a++) {
+                    int t = dfa.step(s, a);
+                    if (t != CompiledDFA.DEAD) {
+                        sum += current[t];
+                        if (sum >= modulus) {
+                            sum -= modulus;
+                        }
+                    }
+                }
+                next[s] = sum;
+            }
+            long[] swap = current;
+            current = next;
+            next = swap;
+            result[r] = current[dfa.getInitialState()];
+        }
+        return result;
+    }
+
+    // Same as countByPower but modulo modulus, returned as { exactly, upTo }
+    public static long[] countByPower(CompiledDFA dfa, long length, long modulus) {
+        checkModulus(modulus);
+        int n = dfa.getNumStates();
+        int k = dfa.getSymbols().size();
+        int size = n + 1;
+        long[][] matrix = new long[size][size];
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < k; a++) {
+                int t = dfa.step(s, a);
+                if (t != CompiledDFA.DEAD) {
+                    matrix[s][t] = (matrix[s][t] + 1) % modulus;
+                }
+            }
+            if (dfa.isAccepting(s)) {
+                matrix[s][n] = 1 % modulus;
+            }
+        }
+        matrix[n][n] = 1 % modulus;
+
+        long[][] power = power(matrix, length, modulus);
+        int start = dfa.getInitialState();
+        long exactly = 0;
+        for (int s = 0; s < n; s++) {
+            if (dfa.isAccepting(s)) {
+                exactly = (exactly + power[start][s]) % modulus;
+            }
+        }
+        long upTo = (power[start][n] + exactly) % modulus;
+        return new long[] {exactly, upTo};
+    }
+
+    private static void checkModulus(long modulus) {
+        if (modulus < 1 || modulus > MAX_MODULUS) {
+            throw new IllegalArgumentException("modulus must be between 1 and " + MAX_MODULUS + ": " + modulus);
+        }
+    }
+
+    private static long[][] power(long[][] matrix, long exponent, long modulus) {
+        int size = matrix.length;
+        long[][] result = new long[size][size];
+        for (int i = 0; i < size; i++) {
+            result[i][i] = 1 % modulus;
+        }
+        long[][] base = matrix;
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) {
+                result = multiply(result, base, modulus);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                base = multiply(base, base, modulus);
+            }
+        }
+        return result;
+    }
+
+    // Entries are below modulus, so each product plus a reduced sum fits in a long
+    private static long[][] multiply(long[][] x, long[][] y, long modulus) {
+        int size = x.length;
+        long[][] product = new long[size][size];
+        for (int i = 0; i < size; i++) {
+            long[] row = product[i];
+            for (int m = 0; m < size; m++) {
+                long xm = x[i][m];
+                if (xm == 0) {
+                    continue;
+                }
+                long[] ym = y[m];
+                for (int j = 0; j < size; j++) {
+                    if (ym[j] != 0) {
+                        row[j] = (row[j] + xm * ym[j]) % modulus;
+                    }
+                }
+            }
+        }
+        return product;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Determinizes an NFA or epsilon-NFA on demand while running input. A DFA state
+// is only created the first time its subset is reached, and its transitions are
+// filled in as they are taken, so they are reused by every later input. The
+// cache of states is capped by an estimate of its heap use; when it is full the
+// whole cache is flushed and rebuilding starts from the current state, which
+// keeps automata with exponential subset blowup in bounded memory.
+// Not safe for use from more than one thread at a time.
+public class LazyDFA implements DeterministicMatcher {
+
+    // Default cap on the estimated cache size in bytes
+    public static final long DEFAULT_CACHE_BYTES = 8L << 20;
+
+    // Marks a transition that has not been computed yet
+    private static final int UNKNOWN = -1;
+
+    private final CompiledNFA nfa;
+    private final int numSymbols;
+    private final int words;
+    private final long maxCacheBytes;
+
+    private final Map<StateSet, Integer> stateIndex = new HashMap<>();
+    private final List<StateSet> states = new ArrayList<>();
+    private boolean[] accepting = new boolean[16];
+    // sink[state] is 0 until checked, then 1 if the state is not a sink and 2 if it is
+    private byte[] sink = new byte[16];
+    // next[state * numSymbols + symbol] is the next state or UNKNOWN
+    private int[] next;
+    private long cacheBytes;
+    private int startState = UNKNOWN;
+
+    // Scratch bitsets for computing a transition
+    private final long[] current;
+    private final long[] successor;
+
+    private long hits;
+    private long misses;
+    private long flushes;
+
+    public LazyDFA(CompiledNFA nfa) {
+        this(nfa, DEFAULT_CACHE_BYTES);
+    }
+
+    public LazyDFA(CompiledNFA nfa, long maxCacheBytes) {
+        this.nfa = nfa;
+        this.numSymbols = nfa.getSymbols().size();
+        this.words = nfa.getWords();
+        this.maxCacheBytes = maxCacheBytes;
+        this.next = new int[16 * Math.max(1, numSymbols)];
+        this.current = new long[words];
+        this.successor = new long[words];
+    }
+
+    public boolean run(String inputString) {
+        int state = getStartState();
+        for (int i = 0; i < inputString.length(); i++) {
+            int symbol = nfa.getSymbols().indexOf(inputString.charAt(i));
+            if (symbol < 0) {
+                return false;
+            }
+            state = step(state, symbol);
+            if (isDead(state)) {
+                return false;
+            }
+        }
+        return isAccepting(state);
+    }
+
+    @Override
+    public SymbolMap getSymbols() {
+        return nfa.getSymbols();
+    }
+
+    @Override
+    public int getStartState() {
+        if (startState == UNKNOWN) {
+            startState = addState(new StateSet(nfa.initialSet()));
+        }
+        return startState;
+    }
+
+    // Next state on a symbol index. If the cache is flushed while adding the target,
+    // state ids from before the call are no longer valid, only the returned one is.
+    @Override
+    public int step(int state, int symbol) {
+        int cell = state * numSymbols + symbol;
+        int target = next[cell];
+        if (target != UNKNOWN) {
+            hits++;
+            return target;
+        }
+        misses++;
+
+        long[] bits = states.get(state).toBits(words);
+        System.arraycopy(bits, 0, current, 0, words);
+        nfa.step(current, symbol, successor);
+        StateSet targetSet = new StateSet(successor);
+
+        Integer existing = stateIndex.get(targetSet);
+        if (existing != null) {
+            next[cell] = existing;
+            return existing;
+        }
+        if (cacheBytes + estimateSize(targetSet) > maxCacheBytes && !states.isEmpty()) {
+            // Out of room, start over keeping only the state we are stepping from
+            StateSet from = states.get(state);
+            flush();
+            state = addState(from);
+            cell = state * numSymbols + symbol;
+            existing = stateIndex.get(targetSet);
+        }
+        target = existing != null ? existing : addState(targetSet);
+        next[cell] = target;
+        return target;
+    }
+
+    @Override
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    // Checked on the subset itself the first time it is asked, so it never touches the cache
+    @Override
+    public boolean isSink(int state) {
+        if (sink[state] == 0) {
+            long[] bits = states.get(state).toBits(words);
+            boolean loops = true;
+            for (int a = 0; a < numSymbols && loops; a++) {
+                nfa.step(bits, a, successor);
+                loops = Arrays.equals(bits, successor);
+            }
+            sink[state] = (byte) (loops ? 2 : 1);
+        }
+        return sink[state] == 2;
+    }
+
+    // True if the state is the empty subset, no input can lead to acceptance from it
+    public boolean isDead(int state) {
+        return states.get(state).isEmpty();
+    }
+
+    public CompiledNFA getNFA() {
+        return nfa;
+    }
+
+    // Subset of NFA states behind a cached state, as a bitset
+    public long[] getStateBits(int state) {
+        return states.get(state).toBits(words);
+    }
+
+    private int addState(StateSet set) {
+        if (Metrics.isEnabled()) {
+            Metrics.recordActiveSet(set.cardinality());
+        }
+        int id = states.size();
+        states.add(set);
+        stateIndex.put(set, id);
+        if (id >= accepting.length) {
+            accepting = Arrays.copyOf(accepting, accepting.length * 2);
+            sink = Arrays.copyOf(sink, sink.length * 2);
+        }
+        accepting[id] = nfa.isAccepting(set.toBits(words));
+        sink[id] = 0;
+        int rowEnd = (id + 1) * numSymbols;
+        if (rowEnd > next.length) {
+            next = Arrays.copyOf(next, Math.max(next.length * 2, rowEnd));
+        }
+        Arrays.fill(next, id * numSymbols, rowEnd, UNKNOWN);
+        cacheBytes += estimateSize(set);
+        return id;
+    }
+
+    private void flush() {
+        flushes++;
+        states.clear();
+        stateIndex.clear();
+        cacheBytes = 0;
+        startState = UNKNOWN;
+    }
+
+    // Rough heap cost of one cached state: the subset, its map entry and its table row
+    private long estimateSize(StateSet set) {
+        return set.estimateSize() + 48L + 4L * numSymbols + 1L;
+    }
+
+    public int getCachedStates() {
+        return states.size();
+    }
+
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Long running matcher that keeps compiled automata in memory between queries, so a
+// query costs a table walk instead of JVM startup, parsing and compilation. Clients
+// connect over TCP on the loopback interface or over a Unix domain socket and send one
+// command per line:
+//
+//   load <NAME> <FILENAME>   compile an automaton (or regex:<PATTERN>) under a name
+//   run <NAME> <INPUT>       run one input, the rest of the line after the name
+//   batch <NAME> <COUNT>     run the next COUNT lines, one reply line each
+//   stats                    automata loaded, connections and queries served
+//   quit                     close the connection
+//
+// Every reply starts with "ok" or "error". Compiled DFAs are never modified after they
+// are built, so one copy is shared by every connection. An NFA is never fully
+// determinized, since one large load would hold up the others and could fill the heap.
+// It is shared as its compiled NFA instead, and each connection determinizes it
+// lazily in a bounded cache of its own. Each connection gets its own thread, a virtual
+// thread when the JVM has them.
+public class MatcherServer {
+
+    // Compiles the automaton named by a file path or pattern, into a CompiledDFA or a LazyDFA
+    public interface Loader {
+        DeterministicMatcher load(String filePath) throws IOException;
+    }
+
+    private final Loader loader;
+    private final Map<String, DeterministicMatcher> automata = new ConcurrentHashMap<>();
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+
+    public MatcherServer(Loader loader) {
+        this.loader = loader;
+    }
+
+    // Serves until the process is stopped. The address is a port on the loopback
+    // interface, or unix:<PATH> for a Unix domain socket.
+    public void serve(String address) throws IOException {
+        ServerSocketChannel server;
+        if (address.startsWith("unix:")) {
+            Path path = Paths.get(address.substring("unix:".length()));
+            // Only a socket left behind by an earlier server is replaced
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (!isSocket(path)) {
+                    throw new IOException(path + " exists and is not a socket");
+                }
+                Files.delete(path);
+            }
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(path));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // The socket file is only left behind
+                }
+            }));
+        } else {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+        }
+        System.out.println("Listening on " + server.getLocalAddress());
+
+        ExecutorService executor = newPerConnectionExecutor();
+        try (server) {
+            while (true) {
+                SocketChannel client = server.accept();
+                connections.incrementAndGet();
+                executor.execute(() -> handle(client));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean isSocket(Path path) throws IOException {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            return (mode & 0170000) == 0140000;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Without the unix view, a socket is at least not a file, directory or link
+            return Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+    }
+
+    // Virtual threads are looked up reflectively so the server still builds for Java 17,
+    // where a cached pool of platform threads is used instead
+    private static ExecutorService newPerConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "matcher-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8), 1 << 16);
+             Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8), 1 << 16)) {
+            // This connection's lazy DFAs, keyed by the shared one they were copied from
+            Map<DeterministicMatcher, LazyDFA> lazy = new IdentityHashMap<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().equals("quit")) {
+                    out.write("ok bye\n");
+                    break;
+                }
+                execute(line, in, out, lazy);
+                out.flush();
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The client went away, nothing is left to reply to
+        }
+    }
+
+    // Runs one command and writes its reply
+    private void execute(String line, BufferedReader in, Writer out, Map<DeterministicMatcher, LazyDFA> lazy) throws IOException {
+        String[] words = line.trim().split("\\s+", 3);
+        switch (words[0]) {
+            case "load": {
+                if (words.length < 3) {
+                    out.write("error usage: load <NAME> <FILENAME>\n");
+                    return;
+                }
+                try {
+                    DeterministicMatcher matcher = loader.load(words[2]);
+                    automata.put(words[1], matcher);
+                    if (matcher instanceof LazyDFA) {
+                        out.write("ok loaded " + words[1] + " with " + ((LazyDFA) matcher).getNFA().getNumStates()
+                                + " NFA states and " + matcher.getSymbols().size() + " symbols\n");
+                    } else {
+                        out.write("ok loaded " + words[1] + " with " + ((CompiledDFA) matcher).getNumStates()
+                                + " states and " + matcher.getSymbols().size() + " symbols\n");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    out.write("error could not load " + words[2] + ": " + e.getMessage() + "\n");
+                }
+                return;
+            }
+            case "run": {
+                DeterministicMatcher matcher = find(words, out, lazy);
+                if (matcher == null) {
+                    return;
+                }
+                // The input is everything after the name, it may be empty
+                String input = words.length < 3 ? "" : words[2];
+                queries.incrementAndGet();
+                out.write(accepts(matcher, input) ? "ok accept\n" : "ok reject\n");
+                return;
+            }
+            case "batch": {
+                int count;
+                try {
+                    count = Integer.parseInt(words.length < 3 ? "" : words[2]);
+                } catch (NumberFormatException e) {
+                    count = -1;
+                }
+                if (count < 0) {
+                    out.write("error usage: batch <NAME> <COUNT>\n");
+                    return;
+                }
+                // The client sends the lines whatever the reply, so they are read even when
+                // the name is not loaded, rather than being run as commands
+                DeterministicMatcher matcher = find(words, out, lazy);
+                if (matcher == null) {
+                    skipLines(in, count);
+                    return;
+                }
+                // Sent before the lines are read, for clients that wait for it before sending them
+                out.write("ok " + count + "\n");
+                out.flush();
+                int run = 0;
+                for (; run < count; run++) {
+                    String input = in.readLine();
+                    if (input == null) {
+                        break;
+                    }
+                    out.write(accepts(matcher, input) ? "accept\n" : "reject\n");
+                }
+                queries.addAndGet(run);
+                return;
+            }
+            case "stats": {
+                out.write("ok automata=" + automata.size() + " connections=" + connections.get()
+                        + " queries=" + queries.get() + "\n");
+                return;
+            }
+            default:
+                out.write("error unknown command: " + words[0] + "\n");
+        }
+    }
+
+    // The named automaton, with a lazy DFA swapped for this connection's own copy
+    private DeterministicMatcher find(String[] words, Writer out, Map<DeterministicMatcher, LazyDFA> lazy) throws IOException {
+        if (words.length < 2) {
+            out.write("error usage: " + words[0] + " <NAME> ...\n");
+            return null;
+        }
+        DeterministicMatcher matcher = automata.get(words[1]);
+        if (matcher == null) {
+            out.write("error no automaton loaded as " + words[1] + "\n");
+        } else if (matcher instanceof LazyDFA) {
+            matcher = lazy.computeIfAbsent(matcher, shared -> new LazyDFA(((LazyDFA) shared).getNFA()));
+        }
+        return matcher;
+    }
+
+    private static void skipLines(BufferedReader in, int count) throws IOException {
+        int skipped = 0;
+        while (skipped < count && in.readLine() != null) {
+            skipped++;
+        }
+    }
+
+    private static boolean accepts(DeterministicMatcher matcher, String input) {
+        if (matcher instanceof LazyDFA) {
+            return ((LazyDFA) matcher).run(input);
+        }
+        return ((CompiledDFA) matcher).accepts(input);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+// Wall time, allocation and size counters for each phase of the work, such as parsing,
+// compiling, determinizing or enumerating. A phase is timed with
+//
+//   try (Metrics.Phase phase = Metrics.start("parse")) { ... phase.states(n); }
+//
+// and while enabled every phase of the same name is added to one total. Each finished
+// phase is also committed as a PhaseEvent for Flight Recorder. Allocation is what the
+// calling thread allocated, so work a phase hands to other threads is not counted.
+// Counters that would slow down a hot loop, like the peak NFA active set, are likewise
+// only kept when enabled.
+public final class Metrics {
+
+    private static volatile boolean enabled;
+
+    // Totals in the order the phases first ran
+    private static final Map<String, Totals> totals = new LinkedHashMap<>();
+
+    private static final AtomicLong peakActiveStates = new AtomicLong();
+    private static final AtomicLong closureIterations = new AtomicLong();
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private Metrics() {
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static Phase start(String name) {
+        return new Phase(name);
+    }
+
+    // Records the size of an NFA's active state set, keeping the largest
+    public static void recordActiveSet(long size) {
+        peakActiveStates.accumulateAndGet(size, Math::max);
+    }
+
+    // Counts merges of one closure into another while building epsilon closures
+    public static void addClosureIterations(long count) {
+        closureIterations.addAndGet(count);
+    }
+
+    public static long getPeakActiveStates() {
+        return peakActiveStates.get();
+    }
+
+    public static long getClosureIterations() {
+        return closureIterations.get();
+    }
+
+    // Copy of the totals so far, by phase name
+    public static synchronized Map<String, Totals> getTotals() {
+        Map<String, Totals> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    public static synchronized void reset() {
+        totals.clear();
+        peakActiveStates.set(0);
+        closureIterations.set(0);
+    }
+
+    public static synchronized void print(PrintStream out) {
+        out.println(String.format("%-14s %7s %10s %10s %10s %12s %10s",
+                "Phase", "Calls", "Time ms", "Alloc MB", "States", "Transitions", "Output"));
+        for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+            Totals t = entry.getValue();
+            out.println(String.format("%-14s %7d %10.1f %10.1f %10d %12d %10d", entry.getKey(), t.calls,
+                    t.nanos / 1e6, t.allocatedBytes / (1024.0 * 1024.0), t.states, t.transitions, t.items));
+        }
+        out.println("Peak NFA active set: " + peakActiveStates.get() + " states");
+        out.println("Epsilon closure iterations: " + closureIterations.get());
+    }
+
+    private static synchronized void add(Phase phase, long nanos, long allocated) {
+        Totals t = totals.computeIfAbsent(phase.name, k -> new Totals());
+        t.calls++;
+        t.nanos += nanos;
+        t.allocatedBytes += allocated;
+        t.states += phase.states;
+        t.transitions += phase.transitions;
+        t.items += phase.items;
+    }
+
+    private static long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+
+    // One timed run of a phase, finished by close. Phases run on every compile, so when
+    // neither the totals nor a recording want it the allocation is not queried at all.
+    public static final class Phase implements AutoCloseable {
+        private final String name;
+        private final boolean counted = enabled;
+        private final PhaseEvent event = new PhaseEvent();
+        private final boolean measured = counted || event.isEnabled();
+        private final long startNanos;
+        private final long startBytes;
+        private long states;
+        private long transitions;
+        private long items;
+
+        private Phase(String name) {
+            this.name = name;
+            this.startBytes = measured ? allocatedBytes() : 0L;
+            event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        public Phase states(long count) {
+            states += count;
+            return this;
+        }
+
+        public Phase transitions(long count) {
+            transitions += count;
+            return this;
+        }
+
+        public Phase items(long count) {
+            items += count;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = measured ? allocatedBytes() - startBytes : 0L;
+            if (counted) {
+                add(this, nanos, allocated);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.states = states;
+                event.transitions = transitions;
+                event.items = items;
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    // Sums over every run of one phase
+    public static final class Totals {
+        private long calls;
+        private long nanos;
+        private long allocatedBytes;
+        private long states;
+        private long transitions;
+        private long items;
+
+        private Totals copy() {
+            Totals t = new Totals();
+            t.calls = calls;
+            t.nanos = nanos;
+            t.allocatedBytes = allocatedBytes;
+            t.states = states;
+            t.transitions = transitions;
+            t.items = items;
+            return t;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getStates() {
+            return states;
+        }
+
+        public long getTransitions() {
+            return transitions;
+        }
+
+        public long getItems() {
+            return items;
+        }
+    }
+}
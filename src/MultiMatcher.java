@@ -0,0 +1,104 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Runs input against several automata in one pass. The automata are joined as the
+// disjoint parts of one epsilon-NFA, which is determinized lazily, so every DFA state
+// is a subset spanning all the parts. Each state is labelled with the parts that have
+// an accept state in its subset, and the label of the state an input ends in is the set
+// of automata accepting it. The scan costs the same however many automata there are;
+// only the number of DFA states grows.
+// Not safe for use from more than one thread at a time.
+public class MultiMatcher {
+
+    private final int numParts;
+    private final CompiledNFA nfa;
+    private final LazyDFA lazy;
+    // owner[s] is the part that NFA state s came from, or -1 for the added initial state
+    private final int[] owner;
+
+    // Labels of the lazy DFA states, computed on first use and dropped when its cache is flushed
+    private BitSet[] labels = new BitSet[16];
+    private long flushes;
+
+    public MultiMatcher(List<? extends Automaton> automata) {
+        this(automata, LazyDFA.DEFAULT_CACHE_BYTES);
+    }
+
+    public MultiMatcher(List<? extends Automaton> automata, long maxCacheBytes) {
+        numParts = automata.size();
+        EpsilonNFA union = EpsilonNFA.union(automata);
+        nfa = CompiledNFA.compile(union);
+        lazy = new LazyDFA(nfa, maxCacheBytes);
+
+        // The union keeps part i at ids offset(i) .. offset(i + 1), and CompiledNFA
+        // renumbers states by name, so map each compiled state back through its name
+        int[] partEnd = new int[numParts];
+        int total = 0;
+        for (int i = 0; i < numParts; i++) {
+            total += automata.get(i).getNumStates();
+            partEnd[i] = total;
+        }
+        owner = new int[nfa.getNumStates()];
+        for (int s = 0; s < owner.length; s++) {
+            int id = union.getStateIndex(nfa.getStateName(s));
+            int part = Arrays.binarySearch(partEnd, id);
+            part = part >= 0 ? part + 1 : -part - 1;
+            owner[s] = part < numParts ? part : -1;
+        }
+    }
+
+    // Indexes of the automata accepting the input
+    public BitSet match(String input) {
+        SymbolMap symbols = lazy.getSymbols();
+        int state = lazy.getStartState();
+        for (int i = 0; i < input.length(); i++) {
+            int symbol = symbols.indexOf(input.charAt(i));
+            if (symbol < 0) {
+                return new BitSet();
+            }
+            state = lazy.step(state, symbol);
+            if (lazy.isDead(state)) {
+                return new BitSet();
+            }
+        }
+        return (BitSet) getLabel(state).clone();
+    }
+
+    // Parts with an accept state in the subset of a lazy DFA state
+    public BitSet getLabel(int state) {
+        if (lazy.getFlushes() != flushes) {
+            flushes = lazy.getFlushes();
+            Arrays.fill(labels, null);
+        }
+        if (state >= labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(labels.length * 2, state + 1));
+        }
+        if (labels[state] == null) {
+            BitSet label = new BitSet(numParts);
+            long[] bits = lazy.getStateBits(state);
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    int s = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (nfa.isAcceptingState(s) && owner[s] >= 0) {
+                        label.set(owner[s]);
+                    }
+                    word &= word - 1;
+                }
+            }
+            labels[state] = label;
+        }
+        return labels[state];
+    }
+
+    public int getNumParts() {
+        return numParts;
+    }
+
+    public LazyDFA getLazyDFA() {
+        return lazy;
+    }
+}
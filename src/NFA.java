@@ -5,10 +5,18 @@
  import java.util.*;
 
 public class NFA extends Automaton{
+
+    // Bitset simulation used for running input, built on first use
+    private CompiledNFA compiled;
+
     public NFA(Set<String> states, Set<String> alphabet, String initialState, Set<String> acceptStates, Map<String, Map<String, Set<String>>> transitions) {
         super(states, alphabet, initialState, acceptStates, transitions, "NFA", null);
     }
 
+    public NFA(Automaton automaton) {
+        super(automaton, "NFA");
+    }
+
     public Set<String> getNextStates(String currentState, String input) {
         Set<String> nextStates = super.getNextStates(currentState, input);
         
@@ -60,45 +68,19 @@ public class NFA extends Automaton{
     }
 
     public boolean runNFA(String inputString) {
-        // Begin with the initial state.
-        Set<String> currentStates = new HashSet<>();
-        currentStates.add(getInitialState());
-
-        // Process each input symbol.
-        for (int i = 0; i < inputString.length(); i++) {
-            String symbol = String.valueOf(inputString.charAt(i));
-            Set<String> nextStates = new HashSet<>();
-            for (String state : currentStates) {
-                Set<String> transitions = getNextStates(state, symbol);
-                if (transitions != null) {
-                    nextStates.addAll(transitions);
-                }
-            }
-            currentStates = nextStates;
-        }
+        return getCompiled().run(inputString);
+    }
 
-        // Accept if any of the current states is an accept state.
-        for (String state : currentStates) {
-            if (getAcceptStates().contains(state)) {
-                return true;
-            }
+    public CompiledNFA getCompiled() {
+        if (compiled == null) {
+            compiled = CompiledNFA.compile(this);
         }
-        return false;
+        return compiled;
     }
 
     public List<String> generateLanguage(int lengthLimit) {
         List<String> accepted = new ArrayList<>();
-        // Create a set of input symbols 
-        Set<String> inputSymbols = new HashSet<>(getAlphabet());
-        inputSymbols.remove("epsilon");
-        
-        // Call generate all strings method then test which ones work
-        List<String> allStrings = GenerateString.generateAllStrings(inputSymbols, lengthLimit);
-        for (String s : allStrings) {
-            if (this.runNFA(s)) {
-                accepted.add(s);
-            }
-        }
+        GenerateString.generateLanguage(NFAtoDFA.compile(getCompiled()), lengthLimit, accepted::add);
         return accepted;
     }
 
@@ -1,3 +1,162 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+import java.util.stream.*;
+
+// Subset construction from an NFA or epsilon-NFA to an equivalent DFA. Each
+// discovered subset is keyed by its bitset, and the frontier of new subsets is
+// expanded one breadth-first level at a time, optionally in parallel on the
+// common fork-join pool.
 public class NFAtoDFA {
-    
+
+    // NFAs with at least this many states expand the frontier in parallel by default
+    public static final int PARALLEL_THRESHOLD = 1024;
+
+    public static DFA convert(Automaton nfa) {
+        CompiledNFA compiled = CompiledNFA.compile(nfa);
+        return toDFA(compiled, determinize(compiled, compiled.getNumStates() >= PARALLEL_THRESHOLD));
+    }
+
+    public static DFA convert(Automaton nfa, boolean parallel) {
+        CompiledNFA compiled = CompiledNFA.compile(nfa);
+        return toDFA(compiled, determinize(compiled, parallel));
+    }
+
+    // Compiled DFA for an NFA, expanding in parallel if the NFA is large
+    public static CompiledDFA compile(CompiledNFA nfa) {
+        return toCompiledDFA(nfa, determinize(nfa, nfa.getNumStates() >= PARALLEL_THRESHOLD));
+    }
+
+    // Runs the subset construction over the reachable subsets, numbered in breadth-first order
+    public static Result determinize(CompiledNFA nfa, boolean parallel) {
+        try (Metrics.Phase phase = Metrics.start("determinize")) {
+            Result result = expand(nfa, parallel);
+            phase.states(result.getSubsets().size()).transitions(result.getTable().length);
+            return result;
+        }
+    }
+
+    private static Result expand(CompiledNFA nfa, boolean parallel) {
+        boolean tracking = Metrics.isEnabled();
+        int numSymbols = nfa.getSymbols().size();
+        int words = nfa.getWords();
+
+        List<StateSet> subsets = new ArrayList<>();
+        Map<StateSet, Integer> subsetIndex = new HashMap<>();
+        int[] table = new int[16 * Math.max(1, numSymbols)];
+
+        StateSet start = new StateSet(nfa.initialSet());
+        subsets.add(start);
+        subsetIndex.put(start, 0);
+        List<Integer> frontier = new ArrayList<>();
+        frontier.add(0);
+
+        while (!frontier.isEmpty()) {
+            // Compute every successor of the frontier first, this is the part worth spreading over cores
+            StateSet[][] successors = new StateSet[frontier.size()][];
+            IntStream range = IntStream.range(0, frontier.size());
+            if (parallel) {
+                range = range.parallel();
+            }
+            List<Integer> current = frontier;
+            range.forEach(i -> {
+                long[] bits = subsets.get(current.get(i)).toBits(words);
+                long[] next = new long[words];
+                StateSet[] row = new StateSet[numSymbols];
+                for (int a = 0; a < numSymbols; a++) {
+                    nfa.step(bits, a, next);
+                    row[a] = new StateSet(next);
+                }
+                successors[i] = row;
+            });
+
+            // Then number the new subsets in a fixed order so the result does not depend on scheduling
+            List<Integer> nextFrontier = new ArrayList<>();
+            for (int i = 0; i < current.size(); i++) {
+                int from = current.get(i);
+                for (int a = 0; a < numSymbols; a++) {
+                    StateSet target = successors[i][a];
+                    Integer to = subsetIndex.get(target);
+                    if (to == null) {
+                        to = subsets.size();
+                        subsets.add(target);
+                        subsetIndex.put(target, to);
+                        nextFrontier.add(to);
+                        if (tracking) {
+                            Metrics.recordActiveSet(target.cardinality());
+                        }
+                    }
+                    int cell = from * numSymbols + a;
+                    if (cell >= table.length) {
+                        table = Arrays.copyOf(table, Math.max(table.length * 2, cell + 1));
+                    }
+                    table[cell] = to;
+                }
+            }
+            frontier = nextFrontier;
+        }
+
+        int[] finalTable = Arrays.copyOf(table, subsets.size() * numSymbols);
+        return new Result(subsets, finalTable);
+    }
+
+    // Builds the compiled DFA for a determinization result, naming each state after its subset
+    public static CompiledDFA toCompiledDFA(CompiledNFA nfa, Result result) {
+        int count = result.getSubsets().size();
+        String[] names = new String[count];
+        boolean[] accepting = new boolean[count];
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            StateSet subset = result.getSubsets().get(i);
+            names[i] = uniqueName(subsetName(nfa, subset), used);
+            accepting[i] = nfa.isAccepting(subset.toBits(nfa.getWords()));
+        }
+        return new CompiledDFA(names, nfa.getSymbols(), result.getTable(), accepting, 0);
+    }
+
+    private static DFA toDFA(CompiledNFA nfa, Result result) {
+        return toCompiledDFA(nfa, result).toDFA();
+    }
+
+    // Names a subset like [q1;q2] so it stays a single cell when the table is printed
+    private static String subsetName(CompiledNFA nfa, StateSet subset) {
+        List<String> members = new ArrayList<>();
+        for (int s : subset.toArray()) {
+            members.add(nfa.getStateName(s));
+        }
+        Collections.sort(members);
+        return "[" + String.join(";", members) + "]";
+    }
+
+    // Appends #2, #3, ... to a name until it has not been used
+    static String uniqueName(String name, Set<String> used) {
+        String candidate = name;
+        int suffix = 2;
+        while (!used.add(candidate)) {
+            candidate = name + "#" + suffix++;
+        }
+        return candidate;
+    }
+
+    // Subsets in numbering order and the transition table over them
+    public static class Result {
+        private final List<StateSet> subsets;
+        private final int[] table;
+
+        Result(List<StateSet> subsets, int[] table) {
+            this.subsets = subsets;
+            this.table = table;
+        }
+
+        public List<StateSet> getSubsets() {
+            return subsets;
+        }
+
+        // table[subset * numSymbols + symbol] is the next subset
+        public int[] getTable() {
+            return table;
+        }
+    }
 }
@@ -0,0 +1,32 @@
+/*
+ * Elliot Maringer
+ */
+
+import jdk.jfr.*;
+
+// Flight Recorder event committed at the end of every Metrics phase. It is only
+// recorded while a recording has it enabled, which it is by default, e.g.
+//   java -XX:StartFlightRecording=filename=fa.jfr App ...
+@Name("fa.Phase")
+@Label("Automaton Phase")
+@Category("Finite Automata")
+@Description("One phase of parsing, compiling or running an automaton")
+public class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("States")
+    long states;
+
+    @Label("Transitions")
+    long transitions;
+
+    @Label("Output")
+    @Description("Strings, matches or inputs produced by the phase")
+    long items;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
@@ -0,0 +1,204 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Cross product construction over compiled DFAs. Each pair of states is packed
+// into one long over the dense state numbers and only pairs reachable from the
+// initial pair are explored. The two alphabets are merged, and a symbol or
+// transition missing from one DFA leads that side to an implicit sink, so DFAs
+// over different alphabets or with partial tables can be combined.
+public class ProductDFA {
+
+    // Products with at most this many possible pairs index them with a flat array
+    private static final long DIRECT_LIMIT = 1L << 24;
+
+    public static CompiledDFA build(CompiledDFA dfa1, CompiledDFA dfa2, ProductOp op) {
+        try (Metrics.Phase phase = Metrics.start("product")) {
+            CompiledDFA product = explore(dfa1, dfa2, op);
+            phase.states(product.getNumStates()).transitions((long) product.getNumStates() * product.getSymbols().size());
+            return product;
+        }
+    }
+
+    private static CompiledDFA explore(CompiledDFA dfa1, CompiledDFA dfa2, ProductOp op) {
+        SymbolMap symbols = mergeSymbols(dfa1, dfa2);
+        int k = symbols.size();
+        int[] symbols1 = remap(symbols, dfa1.getSymbols());
+        int[] symbols2 = remap(symbols, dfa2.getSymbols());
+
+        // The implicit sink of each side is numbered right after its real states
+        int sink1 = dfa1.getNumStates();
+        int sink2 = dfa2.getNumStates();
+        long width = sink2 + 1L;
+        long pairCount = (sink1 + 1L) * width;
+
+        int[] direct = null;
+        LongIntMap hashed = null;
+        if (pairCount <= DIRECT_LIMIT) {
+            direct = new int[(int) pairCount];
+            Arrays.fill(direct, -1);
+        } else {
+            hashed = new LongIntMap(1 << 16);
+        }
+
+        // pairs doubles as the breadth-first queue, a pair's id is its position
+        long[] pairs = new long[64];
+        int[] table = new int[64 * Math.max(1, k)];
+        int count = 0;
+        long start = dfa1.getInitialState() * width + dfa2.getInitialState();
+        pairs[count] = start;
+        if (direct != null) {
+            direct[(int) start] = count;
+        } else {
+            hashed.put(start, count);
+        }
+        count++;
+
+        for (int head = 0; head < count; head++) {
+            int s1 = (int) (pairs[head] / width);
+            int s2 = (int) (pairs[head] % width);
+            if ((head + 1) * k > table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, (head + 1) * k));
+            }
+            for (int a = 0; a < k; a++) {
+                int next1 = step(dfa1, s1, symbols1[a], sink1);
+                int next2 = step(dfa2, s2, symbols2[a], sink2);
+                long key = next1 * width + next2;
+                int id = direct != null ? direct[(int) key] : hashed.get(key);
+                if (id == -1) {
+                    id = count++;
+                    if (id == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[id] = key;
+                    if (direct != null) {
+                        direct[(int) key] = id;
+                    } else {
+                        hashed.put(key, id);
+                    }
+                }
+                table[head * k + a] = id;
+            }
+        }
+
+        boolean[] accepting = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int s1 = (int) (pairs[i] / width);
+            int s2 = (int) (pairs[i] % width);
+            accepting[i] = op.combine(s1 != sink1 && dfa1.isAccepting(s1), s2 != sink2 && dfa2.isAccepting(s2));
+        }
+        String[] names = pairNames(dfa1, dfa2, pairs, count, width);
+        return new CompiledDFA(names, symbols, Arrays.copyOf(table, count * k), accepting, 0);
+    }
+
+    // Shortest string whose pair of states is accepted under op, or null if there is none.
+    // The product is searched breadth first without building it, stopping at the first hit.
+    public static String shortestWitness(CompiledDFA dfa1, CompiledDFA dfa2, ProductOp op) {
+        SymbolMap symbols = mergeSymbols(dfa1, dfa2);
+        int k = symbols.size();
+        int[] symbols1 = remap(symbols, dfa1.getSymbols());
+        int[] symbols2 = remap(symbols, dfa2.getSymbols());
+        int sink1 = dfa1.getNumStates();
+        int sink2 = dfa2.getNumStates();
+        long width = sink2 + 1L;
+
+        LongIntMap seen = new LongIntMap(1 << 10);
+        // For each discovered pair, the pair it was reached from and on which symbol
+        long[] pairs = new long[64];
+        int[] parent = new int[64];
+        int[] via = new int[64];
+        int count = 0;
+        pairs[count] = dfa1.getInitialState() * width + dfa2.getInitialState();
+        parent[count] = -1;
+        seen.put(pairs[count], count);
+        count++;
+
+        for (int head = 0; head < count; head++) {
+            int s1 = (int) (pairs[head] / width);
+            int s2 = (int) (pairs[head] % width);
+            if (op.combine(s1 != sink1 && dfa1.isAccepting(s1), s2 != sink2 && dfa2.isAccepting(s2))) {
+                // Walk the parents back to the initial pair to spell the witness
+                List<String> path = new ArrayList<>();
+                for (int i = head; parent[i] != -1; i = parent[i]) {
+                    path.add(symbols.getSymbol(via[i]));
+                }
+                Collections.reverse(path);
+                return String.join("", path);
+            }
+            for (int a = 0; a < k; a++) {
+                long key = step(dfa1, s1, symbols1[a], sink1) * width + step(dfa2, s2, symbols2[a], sink2);
+                if (seen.get(key) == -1) {
+                    if (count == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, count * 2);
+                        parent = Arrays.copyOf(parent, count * 2);
+                        via = Arrays.copyOf(via, count * 2);
+                    }
+                    pairs[count] = key;
+                    parent[count] = head;
+                    via[count] = a;
+                    seen.put(key, count);
+                    count++;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Union of both alphabets
+    static SymbolMap mergeSymbols(CompiledDFA dfa1, CompiledDFA dfa2) {
+        List<String> merged = new ArrayList<>(dfa1.getSymbols().getSymbols());
+        merged.addAll(dfa2.getSymbols().getSymbols());
+        return new SymbolMap(merged);
+    }
+
+    // remap[product symbol] is the same symbol's index in the operand, or -1 if it has none
+    static int[] remap(SymbolMap merged, SymbolMap operand) {
+        int[] remap = new int[merged.size()];
+        for (int a = 0; a < merged.size(); a++) {
+            remap[a] = operand.indexOf(merged.getSymbol(a));
+        }
+        return remap;
+    }
+
+    // Steps one side of a product, treating the index after the last state as its sink
+    static int step(CompiledDFA dfa, int state, int symbol, int sink) {
+        if (state == sink || symbol < 0) {
+            return sink;
+        }
+        int next = dfa.step(state, symbol);
+        return next == CompiledDFA.DEAD ? sink : next;
+    }
+
+    // Names each pair "s1:s2". A set of used names is only kept if a colon in a state
+    // name could make two pairs print the same.
+    private static String[] pairNames(CompiledDFA dfa1, CompiledDFA dfa2, long[] pairs, int count, long width) {
+        String sinkName = "sink";
+        boolean colons = false;
+        Set<String> operandNames = new HashSet<>();
+        for (int s = 0; s < dfa1.getNumStates(); s++) {
+            operandNames.add(dfa1.getStateName(s));
+        }
+        for (int s = 0; s < dfa2.getNumStates(); s++) {
+            operandNames.add(dfa2.getStateName(s));
+        }
+        for (String name : operandNames) {
+            colons |= name.indexOf(':') >= 0;
+        }
+        while (operandNames.contains(sinkName)) {
+            sinkName = "_" + sinkName;
+        }
+
+        String[] names = new String[count];
+        Set<String> used = colons ? new HashSet<>() : null;
+        for (int i = 0; i < count; i++) {
+            int s1 = (int) (pairs[i] / width);
+            int s2 = (int) (pairs[i] % width);
+            String name = (s1 == dfa1.getNumStates() ? sinkName : dfa1.getStateName(s1)) + ":"
+                    + (s2 == dfa2.getNumStates() ? sinkName : dfa2.getStateName(s2));
+            names[i] = used != null ? NFAtoDFA.uniqueName(name, used) : name;
+        }
+        return names;
+    }
+}
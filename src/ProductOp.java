@@ -0,0 +1,24 @@
+/*
+ * Elliot Maringer
+ */
+
+// How the product of two DFAs decides acceptance from its two components
+public enum ProductOp {
+    AND,
+    OR,
+    XOR,
+    DIFFERENCE;
+
+    public boolean combine(boolean accept1, boolean accept2) {
+        switch (this) {
+            case AND:
+                return accept1 && accept2;
+            case OR:
+                return accept1 || accept2;
+            case XOR:
+                return accept1 != accept2;
+            default:
+                return accept1 && !accept2;
+        }
+    }
+}
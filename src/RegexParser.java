@@ -0,0 +1,343 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Builds the Glushkov (position) automaton of a regular expression. There is one state per
+// symbol occurrence in the pattern plus an initial state, and no epsilon moves, so the
+// result runs like any NFA and is already a DFA for most patterns.
+//
+// Supported syntax: literal characters, \ to escape one character, . for any symbol that
+// appears in the pattern, [abc] and [a-z] classes, ( ), |, *, + and ?. Every character is
+// one symbol of the alphabet.
+public class RegexParser {
+
+    // Automaton paths starting with this are read as a pattern instead of a file
+    public static final String PREFIX = "regex:";
+
+    // Marks a . position, it matches every symbol once the alphabet is known
+    private static final int ANY = -1;
+
+    private final String source;
+    private final String pattern;
+    private int pos;
+
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<Character, Integer> symbolIds = new HashMap<>();
+
+    // Symbols of position p are positionSymbols[positionStart[p - 1] .. positionStart[p]]
+    private final Positions positionStart = new Positions();
+    private final Positions positionSymbols = new Positions();
+
+    // Follow relation, position edgeFrom[i] may be followed by position edgeTo[i]
+    private final Positions edgeFrom = new Positions();
+    private final Positions edgeTo = new Positions();
+
+    private RegexParser(String source, String pattern) {
+        this.source = source;
+        this.pattern = pattern;
+        positionStart.add(0);
+    }
+
+    public static boolean isPattern(String filePath) {
+        return filePath.startsWith(PREFIX);
+    }
+
+    // Accepts either a bare pattern or one with the regex: prefix
+    public static Automaton parse(String pattern) throws AutomatonParseException {
+        return parseTable(pattern).toAutomaton();
+    }
+
+    public static AutomatonTable parseTable(String pattern) throws AutomatonParseException {
+        String source = isPattern(pattern) ? pattern : PREFIX + pattern;
+        RegexParser parser = new RegexParser(source, source.substring(PREFIX.length()));
+        try (Metrics.Phase phase = Metrics.start("regex")) {
+            Fragment root = parser.parseAlternation();
+            if (parser.pos < parser.pattern.length()) {
+                throw parser.error("unmatched )");
+            }
+            AutomatonTable table = parser.buildTable(root);
+            phase.states(table.getNumStates()).transitions(table.getNumTransitions());
+            return table;
+        }
+    }
+
+    // Position sets of a subexpression. Both lists are owned by the fragment, so combining
+    // two fragments can append to them instead of copying.
+    private static class Fragment {
+        boolean nullable;
+        Positions first = new Positions();
+        Positions last = new Positions();
+    }
+
+    private Fragment parseAlternation() throws AutomatonParseException {
+        Fragment result = parseConcatenation();
+        while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+            pos++;
+            Fragment next = parseConcatenation();
+            result.nullable |= next.nullable;
+            result.first.addAll(next.first);
+            result.last.addAll(next.last);
+        }
+        return result;
+    }
+
+    private Fragment parseConcatenation() throws AutomatonParseException {
+        Fragment result = new Fragment();
+        result.nullable = true;
+        while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+            Fragment next = parseRepetition();
+            follow(result.last, next.first);
+            if (result.nullable) {
+                result.first.addAll(next.first);
+            }
+            if (next.nullable) {
+                result.last.addAll(next.last);
+            } else {
+                result.last = next.last;
+            }
+            result.nullable &= next.nullable;
+        }
+        return result;
+    }
+
+    private Fragment parseRepetition() throws AutomatonParseException {
+        Fragment result = parseAtom();
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            if (c == '*' || c == '+') {
+                follow(result.last, result.first);
+            }
+            if (c == '*' || c == '?') {
+                result.nullable = true;
+            } else if (c != '+') {
+                break;
+            }
+            pos++;
+        }
+        return result;
+    }
+
+    private Fragment parseAtom() throws AutomatonParseException {
+        char c = pattern.charAt(pos);
+        switch (c) {
+            case '(': {
+                pos++;
+                Fragment inner = parseAlternation();
+                if (pos >= pattern.length()) {
+                    throw error("missing )");
+                }
+                pos++;
+                return inner;
+            }
+            case '*':
+            case '+':
+            case '?':
+                throw error("nothing to repeat before " + c);
+            case '[':
+                return parseClass();
+            case '.':
+                pos++;
+                positionSymbols.add(ANY);
+                return position();
+            case '\\':
+                if (pos + 1 >= pattern.length()) {
+                    throw error("nothing to escape");
+                }
+                pos += 2;
+                positionSymbols.add(symbolId(pattern.charAt(pos - 1)));
+                return position();
+            default:
+                pos++;
+                positionSymbols.add(symbolId(pattern.charAt(pos - 1)));
+                return position();
+        }
+    }
+
+    // A class is a single position with several symbols
+    private Fragment parseClass() throws AutomatonParseException {
+        int start = pos++;
+        Set<Integer> members = new LinkedHashSet<>();
+        while (pos < pattern.length() && pattern.charAt(pos) != ']') {
+            char from = classChar();
+            char to = from;
+            if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                pos++;
+                to = classChar();
+                if (to < from) {
+                    throw error("range " + from + "-" + to + " is out of order");
+                }
+            }
+            for (char x = from; x <= to && x >= from; x++) {
+                members.add(symbolId(x));
+            }
+        }
+        if (pos >= pattern.length()) {
+            pos = start;
+            throw error("missing ]");
+        }
+        pos++;
+        if (members.isEmpty()) {
+            pos = start;
+            throw error("empty class");
+        }
+        for (int symbol : members) {
+            positionSymbols.add(symbol);
+        }
+        return position();
+    }
+
+    private char classChar() throws AutomatonParseException {
+        if (pattern.charAt(pos) == '\\') {
+            if (pos + 1 >= pattern.length()) {
+                throw error("nothing to escape");
+            }
+            pos++;
+        }
+        return pattern.charAt(pos++);
+    }
+
+    // Ends the position whose symbols were just added
+    private Fragment position() {
+        positionStart.add(positionSymbols.size);
+        int p = positionStart.size - 1;
+        Fragment result = new Fragment();
+        result.first.add(p);
+        result.last.add(p);
+        return result;
+    }
+
+    private int symbolId(char c) {
+        Integer id = symbolIds.get(c);
+        if (id == null) {
+            id = symbols.size();
+            symbolIds.put(c, id);
+            symbols.add(String.valueOf(c));
+        }
+        return id;
+    }
+
+    private void follow(Positions from, Positions to) {
+        for (int i = 0; i < from.size; i++) {
+            for (int j = 0; j < to.size; j++) {
+                edgeFrom.add(from.items[i]);
+                edgeTo.add(to.items[j]);
+            }
+        }
+    }
+
+    private AutomatonParseException error(String message) {
+        return new AutomatonParseException(source, 0, message + " at position " + pos);
+    }
+
+    // State 0 is the initial state and state p is position p. A transition on a enters
+    // every following position that matches a, so the cells are counted, filled and then
+    // cleared of duplicates in three passes over the follow relation.
+    private AutomatonTable buildTable(Fragment root) throws AutomatonParseException {
+        int numStates = positionStart.size;
+        int numSymbols = symbols.size();
+        if (numSymbols == 0 && positionSymbols.size > 0) {
+            // Every position left is a . and there is no alphabet for it to match
+            pos = pattern.indexOf('.');
+            throw error(". has no symbols to match, since the pattern names none");
+        }
+        for (int i = 0; i < root.first.size; i++) {
+            edgeFrom.add(0);
+            edgeTo.add(root.first.items[i]);
+        }
+
+        int[] cellStart = new int[numStates * numSymbols + 1];
+        for (int i = 0; i < edgeFrom.size; i++) {
+            int p = edgeFrom.items[i];
+            int q = edgeTo.items[i];
+            for (int k = positionStart.items[q - 1]; k < positionStart.items[q]; k++) {
+                int a = positionSymbols.items[k];
+                if (a == ANY) {
+                    for (a = 0; a < numSymbols; a++) {
+                        cellStart[p * numSymbols + a + 1]++;
+                    }
+                } else {
+                    cellStart[p * numSymbols + a + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < numStates * numSymbols; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+        int[] targets = new int[cellStart[numStates * numSymbols]];
+        for (int i = 0; i < edgeFrom.size; i++) {
+            int p = edgeFrom.items[i];
+            int q = edgeTo.items[i];
+            for (int k = positionStart.items[q - 1]; k < positionStart.items[q]; k++) {
+                int a = positionSymbols.items[k];
+                if (a == ANY) {
+                    for (a = 0; a < numSymbols; a++) {
+                        targets[fill[p * numSymbols + a]++] = q;
+                    }
+                } else {
+                    targets[fill[p * numSymbols + a]++] = q;
+                }
+            }
+        }
+
+        // Drop repeated targets, which star of a star and overlapping classes produce
+        int[] seenIn = new int[numStates];
+        Arrays.fill(seenIn, -1);
+        int count = 0;
+        boolean deterministic = true;
+        boolean total = true;
+        for (int c = 0; c < numStates * numSymbols; c++) {
+            int from = cellStart[c];
+            cellStart[c] = count;
+            for (int i = from; i < cellStart[c + 1]; i++) {
+                if (seenIn[targets[i]] != c) {
+                    seenIn[targets[i]] = c;
+                    targets[count++] = targets[i];
+                }
+            }
+            deterministic &= count - cellStart[c] <= 1;
+            total &= count - cellStart[c] == 1;
+        }
+        cellStart[numStates * numSymbols] = count;
+
+        String[] names = new String[numStates];
+        int[] rowOrder = new int[numStates];
+        for (int s = 0; s < numStates; s++) {
+            names[s] = "q" + s;
+            rowOrder[s] = s;
+        }
+        boolean[] accepting = new boolean[numStates];
+        accepting[0] = root.nullable;
+        for (int i = 0; i < root.last.size; i++) {
+            accepting[root.last.items[i]] = true;
+        }
+        // A table that is deterministic but not total is still typed NFA, since a DFA is
+        // printed and stepped as if every cell had a target
+        String type = deterministic && total ? "DFA" : "NFA";
+        return new AutomatonTable(names, symbols.toArray(new String[0]), 0, accepting, rowOrder,
+                cellStart, Arrays.copyOf(targets, count), type);
+    }
+
+    // Growable list of ints
+    private static class Positions {
+        int[] items = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        void addAll(Positions other) {
+            if (size + other.size > items.length) {
+                items = Arrays.copyOf(items, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.items, 0, items, size, other.size);
+            size += other.size;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Finds every substring of a text accepted by a DFA, like grep -o. Matches are
+// leftmost-longest and do not overlap, and empty matches are not reported.
+//
+// Each search step first skips ahead to a byte that can begin a match, using the
+// literal every match starts with when there is one. It then runs a lazily
+// determinized copy of the automaton with an implicit sigma* prefix until a match
+// ends, which reads text without matches exactly once. Once a match is known, the
+// run of alphabet bytes holding it is read once backwards by a lazy DFA for the
+// reversed language, which marks every position a match starts at. Each match is then
+// the DFA run forwards from the next marked start, as far as it can go, so no byte
+// is read again for every start that fails.
+//
+// A line break is never a symbol, so matches never span lines and the text is
+// searched a block of whole lines at a time.
+public class Searcher {
+
+    // Largest region of a file mapped at once
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private static final int READ_CHUNK = 1 << 16;
+
+    // Longest literal prefix used by the prefilter
+    private static final int MAX_PREFIX = 64;
+
+    public interface MatchHandler {
+        void match(long start, long end, ByteBuffer text, int from, int to) throws IOException;
+    }
+
+    private final CompiledDFA dfa;
+    private final int numSymbols;
+    // byteToSymbol[b] is the symbol index of byte b, or -1
+    private final int[] byteToSymbol = new int[256];
+    // live[s] is true if an accept state can be reached from s
+    private final boolean[] live;
+    // canStart[b] is true if a non-empty match can begin with byte b
+    private final boolean[] canStart = new boolean[256];
+    // Bytes every non-empty match begins with
+    private final byte[] prefix;
+    // The DFA behind a sigma* loop, only used to find where the next match ends
+    private final LazyDFA unanchored;
+    private final int[] byteToUnanchored = new int[256];
+    // The reversed DFA behind a sigma* loop, run backwards to find where matches start
+    private final LazyDFA reversed;
+    private final int[] byteToReversed = new int[256];
+    // Match starts found by the backward run, the smallest on top
+    private int[] starts = new int[64];
+
+    private long matches;
+    private long bytesSearched;
+
+    public Searcher(CompiledDFA dfa) {
+        this.dfa = dfa;
+        this.numSymbols = dfa.getSymbols().size();
+        for (int b = 0; b < 256; b++) {
+            byteToSymbol[b] = dfa.getSymbols().indexOf((char) b);
+        }
+        live = findLive();
+
+        int initial = dfa.getInitialState();
+        for (int b = 0; b < 256; b++) {
+            int symbol = byteToSymbol[b];
+            canStart[b] = symbol >= 0 && isLive(dfa.step(initial, symbol));
+        }
+        prefix = findPrefix();
+
+        unanchored = new LazyDFA(CompiledNFA.compile(withSigmaStar()));
+        reversed = new LazyDFA(CompiledNFA.compile(reversedWithSigmaStar()));
+        for (int b = 0; b < 256; b++) {
+            byteToUnanchored[b] = unanchored.getSymbols().indexOf((char) b);
+            byteToReversed[b] = reversed.getSymbols().indexOf((char) b);
+        }
+    }
+
+    // States that reach an accept state, found backwards from the accept states
+    private boolean[] findLive() {
+        int numStates = dfa.getNumStates();
+        int[] count = new int[numStates + 1];
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                int next = dfa.step(s, a);
+                if (next >= 0) {
+                    count[next + 1]++;
+                }
+            }
+        }
+        for (int s = 0; s < numStates; s++) {
+            count[s + 1] += count[s];
+        }
+        int[] fill = Arrays.copyOf(count, numStates);
+        int[] predecessors = new int[count[numStates]];
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                int next = dfa.step(s, a);
+                if (next >= 0) {
+                    predecessors[fill[next]++] = s;
+                }
+            }
+        }
+
+        boolean[] reaches = new boolean[numStates];
+        int[] queue = new int[numStates];
+        int tail = 0;
+        for (int s = 0; s < numStates; s++) {
+            if (dfa.isAccepting(s)) {
+                reaches[s] = true;
+                queue[tail++] = s;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int s = queue[head];
+            for (int i = count[s]; i < count[s + 1]; i++) {
+                if (!reaches[predecessors[i]]) {
+                    reaches[predecessors[i]] = true;
+                    queue[tail++] = predecessors[i];
+                }
+            }
+        }
+        return reaches;
+    }
+
+    private boolean isLive(int state) {
+        return state >= 0 && live[state];
+    }
+
+    // Follows the DFA from its initial state while exactly one byte keeps a match possible
+    private byte[] findPrefix() {
+        ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        int state = dfa.getInitialState();
+        while (literal.size() < MAX_PREFIX && (literal.size() == 0 || !dfa.isAccepting(state))) {
+            int only = -1;
+            for (int b = 0; b < 256; b++) {
+                int symbol = byteToSymbol[b];
+                if (symbol >= 0 && isLive(dfa.step(state, symbol))) {
+                    if (only >= 0) {
+                        only = -2;
+                        break;
+                    }
+                    only = b;
+                }
+            }
+            if (only < 0) {
+                break;
+            }
+            literal.write(only);
+            state = dfa.step(state, byteToSymbol[only]);
+        }
+        return literal.toByteArray();
+    }
+
+    // An NFA for sigma* followed by the DFA's language, minus the empty match. A new
+    // initial state loops on every symbol and also takes the DFA's first steps, and
+    // moves into states that cannot reach acceptance are dropped so subsets stay small.
+    private Automaton withSigmaStar() {
+        int numStates = dfa.getNumStates();
+        int start = numStates;
+        String[] names = new String[numStates + 1];
+        Set<String> used = new HashSet<>();
+        for (int s = 0; s < numStates; s++) {
+            names[s] = NFAtoDFA.uniqueName(dfa.getStateName(s), used);
+        }
+        names[start] = NFAtoDFA.uniqueName("start", used);
+        String[] symbols = dfa.getSymbols().getSymbols().toArray(new String[0]);
+
+        BitSet hasRow = new BitSet(numStates + 1);
+        hasRow.set(0, numStates + 1);
+        BitSet definedCells = new BitSet();
+        int[] cellStart = new int[(numStates + 1) * numSymbols + 1];
+        int[] targets = new int[numStates * numSymbols + 2 * numSymbols];
+        int count = 0;
+        for (int s = 0; s <= numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                int cell = s * numSymbols + a;
+                cellStart[cell] = count;
+                definedCells.set(cell);
+                if (s == start) {
+                    targets[count++] = start;
+                }
+                int next = dfa.step(s == start ? dfa.getInitialState() : s, a);
+                if (isLive(next)) {
+                    targets[count++] = next;
+                }
+            }
+        }
+        cellStart[(numStates + 1) * numSymbols] = count;
+
+        List<Integer> accept = new ArrayList<>();
+        for (int s = 0; s < numStates; s++) {
+            if (dfa.isAccepting(s)) {
+                accept.add(s);
+            }
+        }
+        return new Automaton(names, symbols, numSymbols, names[start],
+                accept.stream().mapToInt(Integer::intValue).toArray(), hasRow, definedCells, cellStart,
+                Arrays.copyOf(targets, count), new BitSet(), null, new int[0], "NFA");
+    }
+
+    // An NFA for sigma* followed by the reversed language of the DFA, minus the empty
+    // string. Read backwards from some position, it accepts at every position where a
+    // match starts. Every move of the DFA between useful states is turned around, and a
+    // new initial state loops on every symbol and also takes the moves back out of the
+    // accept states. The DFA's initial state is the only accept state.
+    private Automaton reversedWithSigmaStar() {
+        int numStates = dfa.getNumStates();
+        int start = numStates;
+        boolean[] useful = reachable();
+        for (int s = 0; s < numStates; s++) {
+            useful[s] &= live[s];
+        }
+        String[] names = new String[numStates + 1];
+        Set<String> used = new HashSet<>();
+        for (int s = 0; s < numStates; s++) {
+            names[s] = NFAtoDFA.uniqueName(dfa.getStateName(s), used);
+        }
+        names[start] = NFAtoDFA.uniqueName("start", used);
+        String[] symbols = dfa.getSymbols().getSymbols().toArray(new String[0]);
+
+        // Count the targets of each cell, then fill them in
+        int[] cellStart = new int[(numStates + 1) * numSymbols + 1];
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                int next = dfa.step(s, a);
+                if (useful[s] && next >= 0 && useful[next]) {
+                    cellStart[next * numSymbols + a + 1]++;
+                    if (dfa.isAccepting(next)) {
+                        cellStart[start * numSymbols + a + 1]++;
+                    }
+                }
+            }
+        }
+        for (int a = 0; a < numSymbols; a++) {
+            cellStart[start * numSymbols + a + 1]++;
+        }
+        for (int c = 0; c < (numStates + 1) * numSymbols; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+        int[] targets = new int[cellStart[(numStates + 1) * numSymbols]];
+        for (int a = 0; a < numSymbols; a++) {
+            targets[fill[start * numSymbols + a]++] = start;
+        }
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                int next = dfa.step(s, a);
+                if (useful[s] && next >= 0 && useful[next]) {
+                    targets[fill[next * numSymbols + a]++] = s;
+                    if (dfa.isAccepting(next)) {
+                        targets[fill[start * numSymbols + a]++] = s;
+                    }
+                }
+            }
+        }
+
+        BitSet hasRow = new BitSet(numStates + 1);
+        hasRow.set(0, numStates + 1);
+        BitSet definedCells = new BitSet();
+        definedCells.set(0, (numStates + 1) * numSymbols);
+        int[] accept = useful[dfa.getInitialState()] ? new int[] {dfa.getInitialState()} : new int[0];
+        return new Automaton(names, symbols, numSymbols, names[start], accept, hasRow, definedCells, cellStart,
+                targets, new BitSet(), null, new int[0], "NFA");
+    }
+
+    // States the DFA can reach from its initial state
+    private boolean[] reachable() {
+        int numStates = dfa.getNumStates();
+        boolean[] seen = new boolean[numStates];
+        int[] queue = new int[numStates];
+        int tail = 0;
+        seen[dfa.getInitialState()] = true;
+        queue[tail++] = dfa.getInitialState();
+        for (int head = 0; head < tail; head++) {
+            for (int a = 0; a < numSymbols; a++) {
+                int next = dfa.step(queue[head], a);
+                if (next >= 0 && !seen[next]) {
+                    seen[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return seen;
+    }
+
+    public void searchFile(String path, MatchHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = 0;
+            while (offset < size) {
+                long length = Math.min(MAP_WINDOW, size - offset);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                // Stop the window after its last line break so no line is split, unless it is one huge line
+                int limit = (int) length;
+                if (offset + length < size) {
+                    int lastBreak = lastLineBreak(window, 0, limit);
+                    if (lastBreak >= 0) {
+                        limit = lastBreak + 1;
+                    }
+                }
+                search(window, 0, limit, offset, handler);
+                offset += limit;
+            }
+        }
+    }
+
+    public void searchStream(InputStream in, MatchHandler handler) throws IOException {
+        byte[] data = new byte[READ_CHUNK];
+        int filled = 0;
+        long offset = 0;
+        int n;
+        while ((n = in.read(data, filled, data.length - filled)) != -1) {
+            filled += n;
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int lastBreak = lastLineBreak(buffer, 0, filled);
+            if (lastBreak < 0) {
+                // No whole line yet, so make room for more of it
+                if (filled == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                continue;
+            }
+            search(buffer, 0, lastBreak + 1, offset, handler);
+            offset += lastBreak + 1;
+            filled -= lastBreak + 1;
+            System.arraycopy(data, lastBreak + 1, data, 0, filled);
+        }
+        search(ByteBuffer.wrap(data), 0, filled, offset, handler);
+    }
+
+    private static int lastLineBreak(ByteBuffer buffer, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Reports the matches in text[from, to), which starts at byte offset base of the input
+    public void search(ByteBuffer text, int from, int to, long base, MatchHandler handler) throws IOException {
+        try (Metrics.Phase phase = Metrics.start("search")) {
+            long before = matches;
+            scan(text, from, to, base, handler);
+            phase.items(matches - before);
+        }
+    }
+
+    private void scan(ByteBuffer text, int from, int to, long base, MatchHandler handler) throws IOException {
+        int i = from;
+        while (i < to) {
+            i = nextCandidate(text, i, to);
+            if (i >= to) {
+                break;
+            }
+            int end = firstMatchEnd(text, i, to);
+            if (end < 0) {
+                break;
+            }
+            // No match runs past a byte outside the alphabet, so every match starting
+            // before end also ends before limit
+            int limit = end;
+            while (limit < to && byteToSymbol[text.get(limit) & 0xFF] >= 0) {
+                limit++;
+            }
+            int count = findStarts(text, i, limit);
+            int next = i;
+            while (count > 0) {
+                int start = starts[--count];
+                if (start < next) {
+                    continue;
+                }
+                int matchEnd = longestMatch(text, start, limit);
+                if (matchEnd > start) {
+                    matches++;
+                    handler.match(base + start, base + matchEnd, text, start, matchEnd);
+                    next = matchEnd;
+                }
+            }
+            i = limit;
+        }
+        bytesSearched += to - from;
+    }
+
+    // First position at or after i that could begin a match
+    private int nextCandidate(ByteBuffer text, int i, int to) {
+        if (prefix.length > 0) {
+            byte first = prefix[0];
+            while (i < to) {
+                while (i < to && text.get(i) != first) {
+                    i++;
+                }
+                if (i >= to || isCandidate(text, i, to)) {
+                    return i;
+                }
+                i++;
+            }
+            return to;
+        }
+        while (i < to && !canStart[text.get(i) & 0xFF]) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isCandidate(ByteBuffer text, int i, int to) {
+        if (!canStart[text.get(i) & 0xFF]) {
+            return false;
+        }
+        if (to - i < prefix.length) {
+            return false;
+        }
+        for (int k = 1; k < prefix.length; k++) {
+            if (text.get(i + k) != prefix[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // End of the first non-empty match ending in text[i, to), or -1
+    private int firstMatchEnd(ByteBuffer text, int i, int to) {
+        int state = unanchored.getStartState();
+        for (int k = i; k < to; k++) {
+            int symbol = byteToUnanchored[text.get(k) & 0xFF];
+            if (symbol < 0) {
+                // Nothing spans a byte outside the alphabet, so start over after it
+                state = unanchored.getStartState();
+                continue;
+            }
+            state = unanchored.step(state, symbol);
+            if (unanchored.isAccepting(state)) {
+                return k + 1;
+            }
+        }
+        return -1;
+    }
+
+    // Reads text[from, to) backwards and pushes every position a non-empty match starts
+    // at onto starts, returning how many there are. The smallest is pushed last.
+    private int findStarts(ByteBuffer text, int from, int to) {
+        int count = 0;
+        int state = reversed.getStartState();
+        for (int k = to - 1; k >= from; k--) {
+            int symbol = byteToReversed[text.get(k) & 0xFF];
+            if (symbol < 0) {
+                state = reversed.getStartState();
+                continue;
+            }
+            state = reversed.step(state, symbol);
+            if (reversed.isAccepting(state)) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = k;
+            }
+        }
+        return count;
+    }
+
+    // End of the longest non-empty match starting at i, or i if there is none
+    private int longestMatch(ByteBuffer text, int i, int to) {
+        int state = dfa.getInitialState();
+        int end = i;
+        for (int k = i; k < to; k++) {
+            int symbol = byteToSymbol[text.get(k) & 0xFF];
+            state = symbol < 0 ? CompiledDFA.DEAD : dfa.step(state, symbol);
+            if (!isLive(state)) {
+                break;
+            }
+            if (dfa.isAccepting(state)) {
+                end = k + 1;
+            }
+        }
+        return end;
+    }
+
+    public long getMatches() {
+        return matches;
+    }
+
+    public long getBytesSearched() {
+        return bytesSearched;
+    }
+
+    // Literal every match begins with, empty if there is none
+    public String getPrefix() {
+        return new String(prefix, StandardCharsets.ISO_8859_1);
+    }
+}
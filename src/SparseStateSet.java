@@ -0,0 +1,48 @@
+/*
+ * Elliot Maringer
+ */
+
+// Set of state indices using the Briggs-Torczon sparse set layout. Adding,
+// membership and clearing are all constant time and iteration only visits
+// members, which suits NFAs with too many states for dense bitsets.
+public class SparseStateSet {
+
+    private final int[] dense;
+    private final int[] sparse;
+    private int size;
+
+    public SparseStateSet(int capacity) {
+        dense = new int[capacity];
+        sparse = new int[capacity];
+    }
+
+    public boolean contains(int state) {
+        int i = sparse[state];
+        return i < size && dense[i] == state;
+    }
+
+    public void add(int state) {
+        if (!contains(state)) {
+            sparse[state] = size;
+            dense[size] = state;
+            size++;
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // The i-th member in insertion order
+    public int get(int i) {
+        return dense[i];
+    }
+}
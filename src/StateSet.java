@@ -0,0 +1,86 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Immutable set of NFA state indices used as a hash key during determinization.
+// The bits are trimmed of trailing zero words so equal sets always have equal
+// arrays, and the hash is computed once when the set is built.
+public final class StateSet {
+
+    private final long[] bits;
+    private final int hash;
+
+    public StateSet(long[] set) {
+        int length = set.length;
+        while (length > 0 && set[length - 1] == 0L) {
+            length--;
+        }
+        bits = Arrays.copyOf(set, length);
+        long h = 0x9E3779B97F4A7C15L;
+        for (long word : bits) {
+            h = (h ^ word) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        hash = (int) (h ^ (h >>> 32));
+    }
+
+    public boolean isEmpty() {
+        return bits.length == 0;
+    }
+
+    public boolean contains(int state) {
+        int w = state >>> 6;
+        return w < bits.length && (bits[w] & (1L << state)) != 0;
+    }
+
+    // Copies the set into a bitset of the given number of words
+    public long[] toBits(int words) {
+        return Arrays.copyOf(bits, words);
+    }
+
+    // Members in increasing order
+    public int[] toArray() {
+        int[] members = new int[cardinality()];
+        int i = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                members[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return members;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Approximate heap footprint in bytes
+    public long estimateSize() {
+        return 40L + 8L * bits.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof StateSet)) {
+            return false;
+        }
+        StateSet that = (StateSet) other;
+        return hash == that.hash && Arrays.equals(bits, that.bits);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+// Runs a deterministic matcher over input that is too large to hold as a String.
+// Files are memory mapped a window at a time and stdin is read in fixed chunks;
+// either way the bytes are fed straight through the matcher with no per character
+// objects. Each byte is one symbol, and line breaks are skipped since a symbol
+// can never be whitespace in the table format. Reading stops as soon as the
+// matcher reaches a sink, because the rest of the input cannot change the result.
+public class StreamRunner {
+
+    // Largest region of a file mapped at once
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private static final int READ_CHUNK = 1 << 16;
+
+    // Marks a line break in byteToSymbol
+    private static final int SKIP = -2;
+
+    private final DeterministicMatcher matcher;
+    // byteToSymbol[b] is the symbol index of byte b, -1 if it is not in the alphabet,
+    // or SKIP for a line break
+    private final int[] byteToSymbol = new int[256];
+
+    private int state;
+    private boolean decided;
+    private long bytesRead;
+
+    public StreamRunner(DeterministicMatcher matcher) {
+        this.matcher = matcher;
+        for (int b = 0; b < 256; b++) {
+            byteToSymbol[b] = matcher.getSymbols().indexOf((char) b);
+        }
+        byteToSymbol['\n'] = SKIP;
+        byteToSymbol['\r'] = SKIP;
+        this.state = matcher.getStartState();
+        this.decided = matcher.isSink(state);
+    }
+
+    public static StreamRunner runFile(DeterministicMatcher matcher, String path) throws IOException {
+        StreamRunner runner = new StreamRunner(matcher);
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long offset = 0; offset < size && !runner.decided; offset += MAP_WINDOW) {
+                long length = Math.min(MAP_WINDOW, size - offset);
+                runner.feed(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            }
+        }
+        return runner;
+    }
+
+    public static StreamRunner runStream(DeterministicMatcher matcher, InputStream in) throws IOException {
+        StreamRunner runner = new StreamRunner(matcher);
+        byte[] chunk = new byte[READ_CHUNK];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        int n;
+        while (!runner.decided && (n = in.read(chunk)) != -1) {
+            buffer.limit(n);
+            runner.feed(buffer);
+        }
+        return runner;
+    }
+
+    // Feeds the buffer from its position to its limit. Returns false once the result is decided.
+    public boolean feed(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        int s = state;
+        for (int i = buffer.position(); i < limit; i++) {
+            int symbol = byteToSymbol[buffer.get(i) & 0xFF];
+            if (symbol == SKIP) {
+                continue;
+            }
+            s = symbol < 0 ? -1 : matcher.step(s, symbol);
+            // With no transition the input is rejected, and at a sink the result is fixed
+            if (s < 0 || matcher.isSink(s)) {
+                bytesRead += i - buffer.position() + 1;
+                state = s;
+                decided = true;
+                return false;
+            }
+        }
+        bytesRead += limit - buffer.position();
+        state = s;
+        return true;
+    }
+
+    public boolean isAccepted() {
+        return state >= 0 && matcher.isAccepting(state);
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
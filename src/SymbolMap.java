@@ -0,0 +1,70 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.util.*;
+
+// Dense numbering of an automaton's input symbols with a direct char lookup
+public class SymbolMap {
+
+    private final String[] symbols;
+
+    // charToIndex[c] is the index of the single character symbol c, or -1
+    private final int[] charToIndex;
+
+    public SymbolMap(Collection<String> alphabet) {
+        // Sort so the numbering does not depend on set iteration order
+        List<String> sorted = new ArrayList<>();
+        for (String symbol : alphabet) {
+            if (!symbol.equals("epsilon") && !sorted.contains(symbol)) {
+                sorted.add(symbol);
+            }
+        }
+        Collections.sort(sorted);
+        symbols = sorted.toArray(new String[0]);
+
+        int maxChar = -1;
+        for (String symbol : symbols) {
+            if (symbol.length() == 1) {
+                maxChar = Math.max(maxChar, symbol.charAt(0));
+            }
+        }
+        charToIndex = new int[maxChar + 1];
+        Arrays.fill(charToIndex, -1);
+        for (int i = 0; i < symbols.length; i++) {
+            if (symbols[i].length() == 1) {
+                charToIndex[symbols[i].charAt(0)] = i;
+            }
+        }
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public String getSymbol(int index) {
+        return symbols[index];
+    }
+
+    // Index of the symbol named by the string, or -1 if it is not in the alphabet
+    public int indexOf(String symbol) {
+        if (symbol.length() == 1) {
+            return indexOf(symbol.charAt(0));
+        }
+        for (int i = 0; i < symbols.length; i++) {
+            if (symbols[i].equals(symbol)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Index of a single character symbol, or -1 if it is not in the alphabet
+    public int indexOf(char c) {
+        return c < charToIndex.length ? charToIndex[c] : -1;
+    }
+
+    public List<String> getSymbols() {
+        return Arrays.asList(symbols);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Elliot Maringer
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+// Counts of how often input visits each state and takes each (state, symbol)
+// transition of a compiled automaton, for finding the cold regions of a large
+// automaton and the hot states worth laying out together. Each thread counts into
+// its own stripe with plain increments, so parallel batch runs neither contend nor
+// lose counts, and the stripes are only summed when the counts are read. Read them
+// once the runs being profiled are done.
+//
+// The counts are written as CSV, one row per state and per defined transition, or
+// as a Graphviz DOT heatmap of the states and transitions that were used.
+public class TransitionProfile {
+
+    // States entered from a state on a symbol, empty if there is no transition
+    public interface Targets {
+        int[] get(int state, int symbol);
+    }
+
+    private final int numStates;
+    private final SymbolMap symbols;
+    private final int numSymbols;
+    // Row width of a stripe, one column per symbol and one for visits
+    private final int width;
+    private final IntFunction<String> stateNames;
+    private final IntPredicate accepting;
+    private final Targets targets;
+
+    private final List<long[]> stripes = new ArrayList<>();
+    private final ThreadLocal<long[]> stripe = ThreadLocal.withInitial(this::newStripe);
+
+    TransitionProfile(int numStates, SymbolMap symbols, IntFunction<String> stateNames, IntPredicate accepting, Targets targets) {
+        this.numStates = numStates;
+        this.symbols = symbols;
+        this.numSymbols = symbols.size();
+        this.width = numSymbols + 1;
+        this.stateNames = stateNames;
+        this.accepting = accepting;
+        this.targets = targets;
+    }
+
+    private long[] newStripe() {
+        long[] counts = new long[numStates * width];
+        synchronized (stripes) {
+            stripes.add(counts);
+        }
+        return counts;
+    }
+
+    // The calling thread's counters. counts[state * width + symbol] counts the transition
+    // and counts[state * width + numSymbols] the visits to the state.
+    long[] stripe() {
+        return stripe.get();
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    public long getVisits(int state) {
+        return sum(state * width + numSymbols);
+    }
+
+    public long getCount(int state, int symbol) {
+        return sum(state * width + symbol);
+    }
+
+    private long sum(int index) {
+        long total = 0;
+        synchronized (stripes) {
+            for (long[] counts : stripes) {
+                total += counts[index];
+            }
+        }
+        return total;
+    }
+
+    private long[] totals() {
+        long[] total = new long[numStates * width];
+        synchronized (stripes) {
+            for (long[] counts : stripes) {
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += counts[i];
+                }
+            }
+        }
+        return total;
+    }
+
+    // DOT if the file name ends in .dot, otherwise CSV
+    public void write(String path) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(path), 1 << 16)) {
+            if (path.endsWith(".dot")) {
+                writeDot(out);
+            } else {
+                writeCsv(out);
+            }
+        }
+    }
+
+    // Every state and every defined transition, including the ones never used, so the
+    // cold ones show up with a count of 0. Targets are separated by spaces.
+    public void writeCsv(Writer out) throws IOException {
+        long[] total = totals();
+        out.write("kind,state,symbol,targets,count\n");
+        for (int s = 0; s < numStates; s++) {
+            out.write("state," + csv(stateNames.apply(s)) + ",,," + total[s * width + numSymbols] + "\n");
+        }
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                int[] to = targets.get(s, a);
+                if (to.length == 0) {
+                    continue;
+                }
+                StringBuilder names = new StringBuilder();
+                for (int t : to) {
+                    if (names.length() > 0) {
+                        names.append(' ');
+                    }
+                    names.append(stateNames.apply(t));
+                }
+                out.write("transition," + csv(stateNames.apply(s)) + "," + csv(symbols.getSymbol(a)) + ","
+                        + csv(names.toString()) + "," + total[s * width + a] + "\n");
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    // States are filled from blue to red by visits on a log scale, and unvisited states are
+    // grey. Only transitions that were taken are drawn, thicker the more they were taken.
+    public void writeDot(Writer out) throws IOException {
+        long[] total = totals();
+        long maxVisits = 0;
+        long maxCount = 0;
+        for (int s = 0; s < numStates; s++) {
+            maxVisits = Math.max(maxVisits, total[s * width + numSymbols]);
+            for (int a = 0; a < numSymbols; a++) {
+                maxCount = Math.max(maxCount, total[s * width + a]);
+            }
+        }
+
+        out.write("digraph profile {\n");
+        out.write("    rankdir=LR;\n");
+        out.write("    node [style=filled];\n");
+        for (int s = 0; s < numStates; s++) {
+            long visits = total[s * width + numSymbols];
+            String fill = visits == 0 ? "#dddddd" : String.format(Locale.ROOT, "%.3f 0.700 1.000", 0.66 * (1.0 - heat(visits, maxVisits)));
+            out.write("    " + dot(stateNames.apply(s)) + " [shape=" + (accepting.test(s) ? "doublecircle" : "circle")
+                    + ", label=" + dot(stateNames.apply(s) + "\n" + visits) + ", fillcolor=\"" + fill + "\"];\n");
+        }
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                long count = total[s * width + a];
+                if (count == 0) {
+                    continue;
+                }
+                String attributes = " [label=" + dot(symbols.getSymbol(a) + ":" + count)
+                        + String.format(Locale.ROOT, ", penwidth=%.2f];\n", 1.0 + 4.0 * heat(count, maxCount));
+                for (int t : targets.get(s, a)) {
+                    out.write("    " + dot(stateNames.apply(s)) + " -> " + dot(stateNames.apply(t)) + attributes);
+                }
+            }
+        }
+        out.write("}\n");
+    }
+
+    // 0 for a count of 1 up to 1 for the largest count
+    private static double heat(long count, long max) {
+        return max <= 1 ? 1.0 : Math.log(count) / Math.log(max);
+    }
+
+    private static String dot(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}